@@ -0,0 +1,56 @@
+package com.playtech.assignment;
+
+/**
+ * A class named BinMapping representing a mapping between BIN ranges and card types.
+ */
+class BinMapping {
+    /**
+     * Issuing bank name.
+     */
+    private String name;
+    /**
+     * The lowest possible card number (first 10 digits of card number) that would be identified within this card range, inclusive.
+     */
+    private final long rangeFrom;
+    /**
+     * The highest possible card number (first 10 digits of card number) that would be identified within this card range, inclusive.
+     */
+    private final long rangeTo;
+    /**
+     * Type of card associated with the BIN range (either debit or credit).
+     */
+    private final String type;
+    /**
+     * Three-letter country code, ISO 3166-1 alpha-3 that is associated with the BIN range.
+     */
+    private final String country;
+
+    /**
+     * Constructor to initialize BinMapping objects.
+     */
+    public BinMapping(String name, long rangeFrom, long rangeTo, String type, String country){
+        this.name = name;
+        this.rangeFrom = rangeFrom;
+        this.rangeTo = rangeTo;
+        this.type = type;
+        this.country = country;
+    }
+
+    /**
+     * Getter methods for retrieving objects of the BinMapping class.
+     */
+    public long getRangeFrom() {
+        return this.rangeFrom;
+    }
+
+    public long getRangeTo() {
+        return this.rangeTo;
+    }
+
+    public String getType() {
+        return this.type;
+    }
+    public String getCountry(){
+        return this.country;
+    }
+}
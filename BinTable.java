@@ -0,0 +1,184 @@
+package com.playtech.assignment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A class named BinTable representing an immutable, versioned snapshot of the BIN mappings.
+ * Lookups find the first mapping in file order whose range contains the card number prefix,
+ * by binary search when the ranges do not overlap and by a linear scan otherwise.
+ */
+final class BinTable {
+
+    /**
+     * Version of the snapshot, recorded with each card decision made with it.
+     */
+    private final long version;
+    /**
+     * Mappings in file order, scanned when ranges overlap.
+     */
+    private final BinMapping[] mappings;
+    /**
+     * Mappings and their range starts sorted by range start, searched when ranges do not overlap.
+     */
+    private final BinMapping[] sortedMappings;
+    private final long[] sortedRangeFrom;
+    private final boolean disjoint;
+
+    private BinTable(long version, BinMapping[] mappings) {
+        this.version = version;
+        this.mappings = mappings;
+        this.sortedMappings = mappings.clone();
+        Arrays.sort(this.sortedMappings, Comparator.comparingLong(BinMapping::getRangeFrom));
+        this.sortedRangeFrom = new long[sortedMappings.length];
+        boolean disjoint = true;
+        for (int i = 0; i < sortedMappings.length; i++) {
+            sortedRangeFrom[i] = sortedMappings[i].getRangeFrom();
+            if (i > 0 && (sortedMappings[i].getRangeFrom() <= sortedMappings[i - 1].getRangeTo()
+                    || sortedMappings[i].getRangeFrom() == sortedMappings[i - 1].getRangeFrom())) {
+                disjoint = false;
+            }
+        }
+        this.disjoint = disjoint;
+    }
+
+    /**
+     * Compiles BIN mappings into a snapshot.
+     *
+     * @param binMappings The list of BIN mappings in file order.
+     * @param version     The version of the snapshot.
+     * @return            The snapshot.
+     */
+    static BinTable compile(List<BinMapping> binMappings, long version) {
+        return new BinTable(version, binMappings.toArray(new BinMapping[0]));
+    }
+
+    /**
+     * Finds the mapping of a card.
+     *
+     * @param cardPrefix The first 10 digits of the card number.
+     * @return           The first mapping in file order whose range contains the prefix, or null if there is none.
+     */
+    BinMapping find(long cardPrefix) {
+        if (!disjoint) {
+            for (BinMapping binMapping : mappings) {
+                if (cardPrefix >= binMapping.getRangeFrom() && cardPrefix <= binMapping.getRangeTo()) {
+                    return binMapping;
+                }
+            }
+            return null;
+        }
+        // With disjoint ranges only the last range starting at or before the prefix can contain it
+        int index = Arrays.binarySearch(sortedRangeFrom, cardPrefix);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        if (index >= 0 && cardPrefix <= sortedMappings[index].getRangeTo()) {
+            return sortedMappings[index];
+        }
+        return null;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * A class named Source which publishes the current snapshot of a BIN file through an atomic reference.
+     * Readers never block: they keep using the snapshot they got while a new one is compiled, and see
+     * the new one only once it is complete. Reloads happen on request or on a background thread.
+     */
+    static class Source implements Closeable {
+        private final Path filePath;
+        private final AtomicReference<BinTable> current = new AtomicReference<>();
+        /**
+         * Modification time and size of the file the current snapshot was compiled from.
+         */
+        private long lastModified = -1;
+        private long size = -1;
+        private ScheduledExecutorService watcher;
+
+        /**
+         * Constructor to load the first snapshot of a BIN file.
+         */
+        Source(final Path filePath) {
+            this.filePath = filePath;
+            try {
+                reloadIfChanged();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Returns the current snapshot.
+         */
+        BinTable current() {
+            return current.get();
+        }
+
+        /**
+         * Compiles and publishes a new snapshot if the file has changed since the last one.
+         * The version is the modification time of the file, but always higher than the previous version.
+         *
+         * @return True if a new snapshot was published, false otherwise.
+         * @throws IOException If the file cannot be accessed.
+         */
+        synchronized boolean reloadIfChanged() throws IOException {
+            long modified = Files.getLastModifiedTime(filePath).toMillis();
+            long length = Files.size(filePath);
+            if (modified == lastModified && length == size) {
+                return false;
+            }
+            List<BinMapping> binMappings = TransactionProcessorSample.readBinMappings(filePath);
+            BinTable previous = current.get();
+            long version = previous == null ? modified : Math.max(modified, previous.getVersion() + 1);
+            current.set(compile(binMappings, version));
+            lastModified = modified;
+            size = length;
+            return true;
+        }
+
+        /**
+         * Starts checking the file for changes in the background.
+         *
+         * @param intervalMillis The time between two checks.
+         */
+        synchronized void watch(long intervalMillis) {
+            if (watcher != null) {
+                return;
+            }
+            watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "reload " + filePath);
+                thread.setDaemon(true);
+                return thread;
+            });
+            watcher.scheduleWithFixedDelay(() -> {
+                try {
+                    if (reloadIfChanged()) {
+                        System.out.println("Reloaded BIN mappings, version " + current().getVersion());
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Keep the current snapshot, the file may still be being written
+                    System.err.println("Could not reload BIN mappings from " + filePath + ": " + e);
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (watcher != null) {
+                watcher.shutdownNow();
+            }
+        }
+    }
+}
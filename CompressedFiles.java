@@ -0,0 +1,171 @@
+package com.playtech.assignment;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A class named CompressedFiles which opens input and output files that may be gzip compressed.
+ * Compressed inputs are recognised by their content and decompressed on a separate thread while the
+ * caller parses the previous chunk. Outputs are compressed when their name ends with ".gz".
+ */
+class CompressedFiles {
+
+    /**
+     * Size of the chunks handed from the decompression thread to the reader.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+    /**
+     * Number of decompressed chunks that may wait for the reader.
+     */
+    private static final int QUEUED_CHUNKS = 16;
+
+    /**
+     * Opens a text file for reading, decompressing it if it is gzip compressed.
+     *
+     * @param filePath The path to the file.
+     * @return         A reader of the (decompressed) text.
+     */
+    static BufferedReader openReader(final Path filePath) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(filePath.toFile()), CHUNK_SIZE);
+        InputStream text = in;
+        // Look at the first two bytes for the gzip magic number
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        if (first == 0x1f && second == 0x8b) {
+            text = new PrefetchInputStream(new GZIPInputStream(in, CHUNK_SIZE), filePath.toString());
+        }
+        return new BufferedReader(new InputStreamReader(text, Charset.defaultCharset()), CHUNK_SIZE);
+    }
+
+    /**
+     * Opens a text file for writing, compressing it if its name ends with ".gz".
+     *
+     * @param filePath The path to the file, which is overwritten.
+     * @return         A writer of the text.
+     */
+    static Writer openWriter(final Path filePath) throws IOException {
+        OutputStream out = new FileOutputStream(filePath.toFile(), false);
+        if (filePath.getFileName().toString().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, CHUNK_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, Charset.defaultCharset()), CHUNK_SIZE);
+    }
+
+    /**
+     * A class named PrefetchInputStream which reads its source on a separate thread, so that
+     * decompressing the next chunk overlaps with parsing the current one.
+     */
+    private static class PrefetchInputStream extends InputStream {
+        /**
+         * Chunk marking the end of the source.
+         */
+        private static final byte[] END = new byte[0];
+
+        private final InputStream source;
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+        private final Thread thread;
+        /**
+         * Error of the reading thread, rethrown to the caller once the chunks before it are consumed.
+         * Any other failure is wrapped in an IOException.
+         */
+        private volatile IOException error;
+        private byte[] chunk = new byte[0];
+        private int position;
+        private boolean ended;
+
+        PrefetchInputStream(InputStream source, String name) {
+            this.source = source;
+            this.thread = new Thread(this::prefetch, "decompress " + name);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        private void prefetch() {
+            try {
+                while (true) {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    int length = source.readNBytes(buffer, 0, CHUNK_SIZE);
+                    if (length == 0) {
+                        break;
+                    }
+                    chunks.put(length == CHUNK_SIZE ? buffer : Arrays.copyOf(buffer, length));
+                }
+            } catch (IOException e) {
+                error = e;
+            } catch (Throwable e) {
+                // Also covers the stream being closed before the end of the source, nobody reads the error then
+                error = new IOException("Decompression failed", e);
+            } finally {
+                // The reader waits for the end marker, so it is queued whatever ended the thread
+                queueEnd();
+            }
+        }
+
+        private void queueEnd() {
+            try {
+                chunks.put(END);
+            } catch (InterruptedException e) {
+                // The stream was closed while the queue was full, the remaining chunks are no longer needed
+                chunks.clear();
+                chunks.offer(END);
+            }
+        }
+
+        /**
+         * Makes sure the current chunk has bytes left, waiting for the next chunk if needed.
+         *
+         * @return False at the end of the source.
+         */
+        private boolean fill() throws IOException {
+            while (!ended && position == chunk.length) {
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for decompressed data");
+                }
+                position = 0;
+                if (chunk == END) {
+                    ended = true;
+                    if (error != null) {
+                        throw error;
+                    }
+                }
+            }
+            return !ended;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            thread.interrupt();
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package com.playtech.assignment;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * A class named Coordinator which spreads the processing of a transactions file over several worker
+ * processes on the same machine and merges their outputs into exactly the output of a single process.
+ * <p>
+ * Transactions are partitioned by the hash of their user_id. Users whose transactions can affect each
+ * other, because they share an account or a transaction ID, are settled into the partition of the first
+ * of them before any worker starts. Each partition therefore holds every transaction its validations depend
+ * on, and workers never need to coordinate with each other while they run. The unique CARD account check
+ * looks at all users at once, so the coordinator does it while merging the events.
+ * <p>
+ * Memory: the partitioning itself keeps only hashes in primitive arrays, but for the unique CARD account
+ * check the coordinator holds every user's set of CARD account numbers as strings, built in file order so
+ * the check picks the same account as a single process. The coordinator's heap therefore grows with the
+ * number of distinct users and CARD accounts in the file, while the other per-transaction state is only
+ * held by the workers.
+ */
+class Coordinator {
+
+    /**
+     * Runs the coordinator with the command-line arguments of TransactionProcessorSample.
+     *
+     * @param args        Command-line arguments.
+     * @param workerCount The number of worker processes.
+     * @throws IOException If an I/O error occurs while reading or writing files, or a worker fails.
+     */
+    static void run(final String[] args, final int workerCount) throws IOException {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("--workers must be at least 1");
+        }
+        String binReload = TransactionProcessorSample.getOption(args, "bin-reload");
+        if (binReload != null && Long.parseLong(binReload) < 1) {
+            // Checked before any worker starts, so that it is not reported as a failed worker
+            throw new IllegalArgumentException("--bin-reload must be at least 1 second");
+        }
+        for (String option : new String[]{"state", "event-log", "report"}) {
+            if (TransactionProcessorSample.getOption(args, option) != null) {
+                throw new IllegalArgumentException("--" + option + " is not supported together with --workers");
+            }
+        }
+        Path transactionsPath = Paths.get(args[1]);
+        String quarantinePath = TransactionProcessorSample.getOption(args, "quarantine");
+        Path workDirectory = Files.createTempDirectory("transaction-workers");
+
+        try (Quarantine quarantine = quarantinePath == null ? Quarantine.discarding() : Quarantine.open(Paths.get(quarantinePath))) {
+            // Settle users that depend on each other into the same partition
+            Partitioning partitioning = new Partitioning(workerCount);
+            // Map to store user_ids along with the set of CARD accounts, as built by the unique account check.
+            // It holds every distinct CARD account of the file, see the memory note of the class
+            Map<String, Set<String>> userAccounts = new HashMap<>();
+            try (BufferedReader reader = CompressedFiles.openReader(transactionsPath)) {
+                // Skip the first line (header line)
+                reader.readLine();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Transaction transaction = TransactionProcessorSample.parseTransaction(line, quarantine);
+                    if (transaction == null) {
+                        continue;
+                    }
+                    partitioning.link(transaction);
+                    if ("CARD".equals(transaction.getMethod())) {
+                        userAccounts.putIfAbsent(transaction.getUser_id(), new HashSet<>());
+                        userAccounts.get(transaction.getUser_id()).add(transaction.getAccount_Number());
+                    }
+                }
+            }
+
+            split(transactionsPath, workDirectory, partitioning);
+            runWorkers(args, workDirectory, workerCount, quarantinePath != null);
+
+            // Declined accounts of all partitions, for the unique account check
+            Set<String> declinedAccounts = new HashSet<>();
+            for (int i = 0; i < workerCount; i++) {
+                declinedAccounts.addAll(ProcessingState.load(workerFile(workDirectory, "state", i)).getDeclinedTransactionTracker().values());
+                if (quarantinePath != null) {
+                    collectQuarantine(workerFile(workDirectory, "quarantine", i), quarantine);
+                }
+            }
+            String foundAcc = TransactionProcessorSample.findReusedCardAccount(userAccounts, declinedAccounts);
+
+            mergeEvents(transactionsPath, Paths.get(args[4]), workDirectory, partitioning, foundAcc);
+            String binVersionsPath = TransactionProcessorSample.getBinVersionsPath(args);
+            if (binVersionsPath != null) {
+                mergeBinVersions(transactionsPath, Paths.get(binVersionsPath), workDirectory, partitioning);
+            }
+            mergeBalances(Paths.get(args[0]), Paths.get(args[3]), workDirectory, partitioning);
+        }
+        deleteDirectory(workDirectory);
+    }
+
+    private static Path workerFile(Path workDirectory, String name, int worker) {
+        return workDirectory.resolve(name + "_" + worker + ".csv");
+    }
+
+    /**
+     * Writes the rows of the transactions file to one file per partition, keeping their order.
+     */
+    private static void split(Path transactionsPath, Path workDirectory, Partitioning partitioning) throws IOException {
+        Writer[] writers = new Writer[partitioning.getPartitions()];
+        try (BufferedReader reader = CompressedFiles.openReader(transactionsPath)) {
+            String header = reader.readLine();
+            for (int i = 0; i < writers.length; i++) {
+                writers[i] = new BufferedWriter(new FileWriter(workerFile(workDirectory, "transactions", i).toFile(), false));
+                writers[i].append(header).append("\n");
+            }
+            Quarantine discarding = Quarantine.discarding();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Transaction transaction = TransactionProcessorSample.parseTransaction(line, discarding);
+                if (transaction != null) {
+                    writers[partitioning.partitionOf(transaction.getUser_id())].append(line).append("\n");
+                }
+            }
+        } finally {
+            for (Writer writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts one worker process per partition and waits for all of them to finish. Workers run with the
+     * JVM options of the coordinator, so a heap size or GC flags given to it apply to every worker.
+     */
+    private static void runWorkers(String[] args, Path workDirectory, int workerCount, boolean quarantine) throws IOException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.addAll(List.of("-cp", System.getProperty("java.class.path"),
+                    TransactionProcessorSample.class.getName(),
+                    args[0],
+                    workerFile(workDirectory, "transactions", i).toString(),
+                    args[2],
+                    workerFile(workDirectory, "balances", i).toString(),
+                    workerFile(workDirectory, "events", i).toString(),
+                    "--worker",
+                    "--state=" + workerFile(workDirectory, "state", i)));
+            if (quarantine) {
+                command.add("--quarantine=" + workerFile(workDirectory, "quarantine", i));
+            }
+            String binReload = TransactionProcessorSample.getOption(args, "bin-reload");
+            if (binReload != null) {
+                command.add("--bin-reload=" + binReload);
+            }
+            if (TransactionProcessorSample.getBinVersionsPath(args) != null) {
+                command.add("--bin-versions=" + workerFile(workDirectory, "bin_versions", i));
+            }
+            processes.add(new ProcessBuilder(command).inheritIO().start());
+        }
+        for (int i = 0; i < workerCount; i++) {
+            int exitCode;
+            try {
+                exitCode = processes.get(i).waitFor();
+            } catch (InterruptedException e) {
+                processes.forEach(Process::destroy);
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for worker " + i, e);
+            }
+            if (exitCode != 0) {
+                throw new IOException("Worker " + i + " failed with exit code " + exitCode + ", files kept in " + workDirectory);
+            }
+        }
+    }
+
+    /**
+     * Adds the rows quarantined by a worker to the quarantine of the coordinator.
+     */
+    private static void collectQuarantine(Path filePath, Quarantine quarantine) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath.toFile()))) {
+            // Skip the first line (header line)
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comma = line.indexOf(',');
+                quarantine.add(line.substring(comma + 1), line.substring(0, comma));
+            }
+        }
+    }
+
+    /**
+     * Writes the events of the workers in the order of the transactions file, followed by the events
+     * of the unique account check, as a single process would.
+     */
+    private static void mergeEvents(Path transactionsPath, Path eventsPath, Path workDirectory, Partitioning partitioning, String foundAcc) throws IOException {
+        BufferedReader[] readers = new BufferedReader[partitioning.getPartitions()];
+        List<String> accountEvents = new ArrayList<>();
+        try (BufferedReader reader = CompressedFiles.openReader(transactionsPath);
+             Writer writer = CompressedFiles.openWriter(eventsPath)) {
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new BufferedReader(new FileReader(workerFile(workDirectory, "events", i).toFile()));
+                // Skip the first line (header line)
+                readers[i].readLine();
+            }
+            writer.append("transaction_id,status,message\n");
+            // Skip the first line (header line)
+            reader.readLine();
+            Quarantine discarding = Quarantine.discarding();
+            int count = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Transaction transaction = TransactionProcessorSample.parseTransaction(line, discarding);
+                if (transaction == null) {
+                    continue;
+                }
+                // Each worker writes exactly one event per transaction before its unique account check
+                writer.append(readers[partitioning.partitionOf(transaction.getUser_id())].readLine()).append("\n");
+                if (Objects.equals(transaction.getAccount_Number(), foundAcc) && count <= 0) {
+                    count += 1;
+                } else if (Objects.equals(transaction.getAccount_Number(), foundAcc)) {
+                    accountEvents.add(transaction.getTransaction_id() + "," + Event.STATUS_DECLINED + ",Cannot withdraw with new account");
+                }
+            }
+            for (String event : accountEvents) {
+                writer.append(event).append("\n");
+            }
+        } finally {
+            for (BufferedReader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the BIN mappings versions of the workers in the order of the transactions file, with the rows
+     * of the merged events file. Workers number the rows of their own events file, so the coordinator counts
+     * the transactions of each partition to match them up.
+     */
+    private static void mergeBinVersions(Path transactionsPath, Path binVersionsPath, Path workDirectory, Partitioning partitioning) throws IOException {
+        BufferedReader[] readers = new BufferedReader[partitioning.getPartitions()];
+        String[][] nextRows = new String[readers.length][];
+        int[] workerRows = new int[readers.length];
+        try (BufferedReader reader = CompressedFiles.openReader(transactionsPath);
+             Writer writer = CompressedFiles.openWriter(binVersionsPath)) {
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new BufferedReader(new FileReader(workerFile(workDirectory, "bin_versions", i).toFile()));
+                // Skip the first line (header line)
+                readers[i].readLine();
+                nextRows[i] = nextBinVersion(readers[i]);
+            }
+            writer.append("ROW,TRANSACTION_ID,BIN_VERSION\n");
+            // Skip the first line (header line)
+            reader.readLine();
+            Quarantine discarding = Quarantine.discarding();
+            int row = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Transaction transaction = TransactionProcessorSample.parseTransaction(line, discarding);
+                if (transaction == null) {
+                    continue;
+                }
+                row++;
+                int partition = partitioning.partitionOf(transaction.getUser_id());
+                workerRows[partition]++;
+                String[] next = nextRows[partition];
+                if (next != null && Integer.parseInt(next[0]) == workerRows[partition]) {
+                    writer.append(String.valueOf(row)).append(",").append(next[1]).append(",").append(next[2]).append("\n");
+                    nextRows[partition] = nextBinVersion(readers[partition]);
+                }
+            }
+        } finally {
+            for (BufferedReader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    private static String[] nextBinVersion(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        return line == null ? null : line.split(",", -1);
+    }
+
+    /**
+     * Writes the balance of every user as computed by the worker of the user's partition.
+     */
+    private static void mergeBalances(Path usersPath, Path balancesPath, Path workDirectory, Partitioning partitioning) throws IOException {
+        List<User> users = TransactionProcessorSample.readUsers(usersPath);
+        List<List<String>> workerBalances = new ArrayList<>();
+        for (int i = 0; i < partitioning.getPartitions(); i++) {
+            List<String> lines = Files.readAllLines(workerFile(workDirectory, "balances", i));
+            // Skip the first line (header line)
+            workerBalances.add(lines.subList(1, lines.size()));
+        }
+        try (Writer writer = CompressedFiles.openWriter(balancesPath)) {
+            writer.append("USER_ID,BALANCE\n");
+            // Every worker writes all users in the order of the users file
+            for (int i = 0; i < users.size(); i++) {
+                writer.append(workerBalances.get(partitioning.partitionOf(users.get(i).getUser_id())).get(i)).append("\n");
+            }
+        }
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * A class named Partitioning which assigns users to partitions. Users are linked when they use the same
+     * account or transaction ID, and linked users share the partition of the first user of their group.
+     * Accounts and IDs are compared by hash only; a hash collision merely links two more users.
+     */
+    private static class Partitioning {
+        private final int partitions;
+        private final Map<String, Integer> userIndexes = new HashMap<>();
+        private final List<String> userIds = new ArrayList<>();
+        /**
+         * Union-find parents of the user indexes; the root of a group is always its first user.
+         */
+        private int[] parents = new int[64];
+        private final HashTable accountUsers = new HashTable();
+        private final HashTable transactionUsers = new HashTable();
+
+        Partitioning(int partitions) {
+            this.partitions = partitions;
+        }
+
+        int getPartitions() {
+            return this.partitions;
+        }
+
+        /**
+         * Links the user of a transaction with the first users of its account and transaction ID.
+         */
+        void link(Transaction transaction) {
+            int user = indexOf(transaction.getUser_id());
+            union(user, accountUsers.putIfAbsent(transaction.getAccount_Number().hashCode(), user));
+            union(user, transactionUsers.putIfAbsent(transaction.getTransaction_id().hashCode(), user));
+        }
+
+        /**
+         * Finds the partition of a user; users without transactions are partitioned by their own ID.
+         */
+        int partitionOf(String userId) {
+            Integer index = userIndexes.get(userId);
+            String representative = index == null ? userId : userIds.get(find(index));
+            return Math.floorMod(representative.hashCode(), partitions);
+        }
+
+        private int indexOf(String userId) {
+            Integer index = userIndexes.get(userId);
+            if (index == null) {
+                index = userIds.size();
+                userIndexes.put(userId, index);
+                userIds.add(userId);
+                if (index == parents.length) {
+                    parents = Arrays.copyOf(parents, parents.length * 2);
+                }
+                parents[index] = index;
+            }
+            return index;
+        }
+
+        private int find(int user) {
+            while (parents[user] != user) {
+                parents[user] = parents[parents[user]];
+                user = parents[user];
+            }
+            return user;
+        }
+
+        private void union(int first, int second) {
+            int firstRoot = find(first);
+            int secondRoot = find(second);
+            if (firstRoot < secondRoot) {
+                parents[secondRoot] = firstRoot;
+            } else if (secondRoot < firstRoot) {
+                parents[firstRoot] = secondRoot;
+            }
+        }
+    }
+
+    /**
+     * A class named HashTable which maps int hashes to the first user index seen with them, in two
+     * primitive arrays so that millions of transaction IDs do not need millions of objects.
+     */
+    private static class HashTable {
+        private int[] keys = new int[1 << 16];
+        /**
+         * User index + 1 per slot, 0 marks an empty slot.
+         */
+        private int[] values = new int[1 << 16];
+        private int size;
+
+        /**
+         * Stores the user for a hash unless the hash is already present.
+         *
+         * @return The user stored for the hash, which is the given user if the hash was not present.
+         */
+        int putIfAbsent(int key, int user) {
+            if (size * 2 >= keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+                if (values[slot] == 0) {
+                    keys[slot] = key;
+                    values[slot] = user + 1;
+                    size++;
+                    return user;
+                }
+                if (keys[slot] == key) {
+                    return values[slot] - 1;
+                }
+            }
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != 0) {
+                    int slot = mix(oldKeys[i]) & mask;
+                    while (values[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.playtech.assignment;
+
+/**
+ * A class named Event representing an event related to a transaction.
+ */
+class Event {
+
+    /**
+     * Define constants for the status of the event.
+     */
+    public static final String STATUS_DECLINED = "DECLINED";
+    public static final String STATUS_APPROVED = "APPROVED";
+
+    /**
+     * ID of the transaction associated with the event.
+     */
+    public String transactionId;
+    /**
+     * ID of the user of the transaction.
+     */
+    public String userId;
+    /**
+     *  Status of the event (either DECLINED or APPROVED).
+     */
+    public String status;
+    /**
+     * Additional message describing the event.
+     */
+    public String message;
+    /**
+     * Reason code of the message, an index into EventLog.REASONS, set by the check that created the event.
+     */
+    public int reason;
+    /**
+     * Version of the BIN mappings snapshot used for a card decision, 0 if no BIN mapping was consulted.
+     */
+    public long binVersion;
+
+    /**
+     * Constructor to initialize Event objects.
+     */
+    public Event(String transactionId, String userId, String status, String message, int reason) {
+        this(transactionId, userId, status, message, reason, 0);
+    }
+
+    /**
+     * Constructor to initialize Event objects of card decisions.
+     */
+    public Event(String transactionId, String userId, String status, String message, int reason, long binVersion) {
+        this.transactionId = transactionId;
+        this.userId = userId;
+        this.status = status;
+        this.message = message;
+        this.reason = reason;
+        this.binVersion = binVersion;
+    }
+
+    /**
+     * Getter methods for retrieving the status and transaction id of the event.
+     */
+    public String getStatus(){
+        return this.status;
+    }
+    public String getTransaction_id() {
+        return this.transactionId;
+    }
+    public String getUser_id() {
+        return this.userId;
+    }
+}
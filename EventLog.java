@@ -0,0 +1,340 @@
+package com.playtech.assignment;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A class named EventLog which writes events to a compact binary log and looks them up again.
+ * <p>
+ * The log file starts with a header (magic, version, event count), a dictionary of the user ids and a
+ * table of the BIN mappings versions, followed by one record per event: a flags byte (status, whether
+ * a BIN mappings version and a message argument follow), the reason code, the user as an index into the
+ * dictionary, the version as an index into the table, the transaction id and the variable part of the
+ * message. Indexes are written as variable-length integers. Decline messages are stored as a reason code,
+ * so repeated messages take a single byte.
+ * <p>
+ * The index file (log path + ".idx") holds the same header, the offset of every record, and two
+ * sorted key tables of (hash, record number) for transaction ids and user ids. A record ends where the
+ * next one starts. Lookups binary search a key table and read only the matching records.
+ */
+class EventLog {
+
+    private static final int MAGIC = 0x45564C47;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * Flags of the records.
+     */
+    private static final int FLAG_DECLINED = 1;
+    private static final int FLAG_BIN_VERSION = 2;
+    private static final int FLAG_ARGUMENT = 4;
+
+    /**
+     * Reason codes of the events, indexes into REASONS. The check creating an event passes its code,
+     * so the message never has to be matched against the known reasons.
+     */
+    static final int REASON_OK = 0;
+    static final int REASON_NON_UNIQUE_ID = 1;
+    static final int REASON_USER_FROZEN = 2;
+    static final int REASON_UNKNOWN_USER = 3;
+    static final int REASON_WRONG_COUNTRY = 4;
+    static final int REASON_INVALID_IBAN = 5;
+    static final int REASON_BIN_NOT_IN_RANGE = 6;
+    static final int REASON_NOT_DEBIT_CARD = 7;
+    static final int REASON_INVALID_METHOD = 8;
+    static final int REASON_INVALID_AMOUNT = 9;
+    static final int REASON_DEPOSIT_BOUNDS = 10;
+    static final int REASON_WITHDRAWAL_BOUNDS = 11;
+    static final int REASON_NO_DEPOSIT = 12;
+    static final int REASON_INVALID_TYPE = 13;
+    static final int REASON_NEW_ACCOUNT = 14;
+    static final int REASON_ACCOUNT_IN_USE = 15;
+    static final int REASON_MALFORMED_IBAN = 16;
+    static final int REASON_MALFORMED_CARD = 17;
+    /**
+     * Reason code of messages that do not end with the text of their reason and are stored as they are.
+     */
+    static final int REASON_OTHER = 0xFF;
+
+    /**
+     * Texts of the known reasons, indexed by reason code. A message ends with the text of its reason,
+     * whatever comes before it (an amount or user id) is stored next to the code.
+     */
+    static final String[] REASONS = {
+            "OK",
+            "Non-unique transaction ID",
+            "User is frozen",
+            "user_id from Transactions not in Users",
+            "Country code does not exist or is wrong",
+            "Invalid IBAN number",
+            "BIN number not in range",
+            "Not a debit card transaction",
+            "Invalid payment method",
+            "is invalid amount",
+            " amount not within the bounds of deposit",
+            " amount not within the bounds of withdrawal",
+            "Withdrawal not allowed with this account - no previous successful deposits made",
+            "Transaction is neither deposit nor withdrawal",
+            "Cannot withdraw with new account",
+            " used by another account",
+            "Malformed IBAN number",
+            "Malformed card number"
+    };
+
+    /**
+     * Writes events to a binary log and its index.
+     *
+     * @param filePath The path to the log file; the index is written next to it.
+     * @param events   The list of events to write.
+     */
+    static void write(final Path filePath, final List<Event> events) {
+        int count = events.size();
+        long[] offsets = new long[count];
+        long[] transactionKeys = new long[count];
+        long[] userKeys = new long[count];
+        // Dictionaries of the user ids and versions, in order of first use
+        Map<String, Integer> userIndexes = new LinkedHashMap<>();
+        Map<Long, Integer> versionIndexes = new LinkedHashMap<>();
+        for (Event event : events) {
+            userIndexes.putIfAbsent(event.userId, userIndexes.size());
+            if (event.binVersion != 0) {
+                versionIndexes.putIfAbsent(event.binVersion, versionIndexes.size());
+            }
+        }
+        try (DataOutputStream log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath.toFile()), 1 << 16))) {
+            writeHeader(log, count);
+            log.writeInt(userIndexes.size());
+            for (String userId : userIndexes.keySet()) {
+                log.writeUTF(userId);
+            }
+            log.writeInt(versionIndexes.size());
+            for (long version : versionIndexes.keySet()) {
+                log.writeLong(version);
+            }
+            // Records are built in a reusable buffer first; offsets are counted in a long, past the int size of the stream
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(128);
+            DataOutputStream record = new DataOutputStream(recordBytes);
+            long offset = log.size();
+            for (int i = 0; i < count; i++) {
+                Event event = events.get(i);
+                int code = event.reason < REASONS.length && event.message.endsWith(REASONS[event.reason]) ? event.reason : REASON_OTHER;
+                String argument = code == REASON_OTHER
+                        ? event.message
+                        : event.message.substring(0, event.message.length() - REASONS[code].length());
+                recordBytes.reset();
+                record.writeByte((Event.STATUS_APPROVED.equals(event.status) ? 0 : FLAG_DECLINED)
+                        | (event.binVersion != 0 ? FLAG_BIN_VERSION : 0)
+                        | (argument.isEmpty() ? 0 : FLAG_ARGUMENT));
+                record.writeByte(code);
+                writeVarInt(record, userIndexes.get(event.userId));
+                if (event.binVersion != 0) {
+                    writeVarInt(record, versionIndexes.get(event.binVersion));
+                }
+                record.writeUTF(event.transactionId);
+                if (!argument.isEmpty()) {
+                    record.writeUTF(argument);
+                }
+                recordBytes.writeTo(log);
+
+                offsets[i] = offset;
+                offset += recordBytes.size();
+
+                transactionKeys[i] = key(event.transactionId, i);
+                userKeys[i] = key(event.userId, i);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        Arrays.sort(transactionKeys);
+        Arrays.sort(userKeys);
+        try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexPath(filePath).toFile()), 1 << 16))) {
+            writeHeader(index, count);
+            for (long offset : offsets) {
+                index.writeLong(offset);
+            }
+            for (long key : transactionKeys) {
+                index.writeLong(key);
+            }
+            for (long key : userKeys) {
+                index.writeLong(key);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, int count) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(count);
+    }
+
+    /**
+     * Writes a non-negative integer in 7-bit groups, so that small indexes take a single byte.
+     */
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static Path indexPath(Path filePath) {
+        return filePath.resolveSibling(filePath.getFileName() + ".idx");
+    }
+
+    /**
+     * Builds an index key sorting by the hash of the id first and by record number second.
+     */
+    private static long key(String id, int recordNumber) {
+        return ((long) id.hashCode() << 32) | (recordNumber & 0xFFFFFFFFL);
+    }
+
+    /**
+     * A class named Reader which looks up events in a binary log through its index.
+     */
+    static class Reader implements Closeable {
+        private final FileChannel log;
+        private final FileChannel index;
+        private final int count;
+        private final String[] userIds;
+        private final long[] versions;
+        private final ByteBuffer longBuffer = ByteBuffer.allocate(8);
+
+        /**
+         * Constructor to open a binary log and its index.
+         */
+        Reader(final Path filePath) throws IOException {
+            this.log = FileChannel.open(filePath, StandardOpenOption.READ);
+            this.index = FileChannel.open(indexPath(filePath), StandardOpenOption.READ);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(index, header, 0);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not an event log index: " + indexPath(filePath));
+            }
+            this.count = header.getInt();
+            // The dictionaries follow the header of the log; records are read by position later
+            log.position(HEADER_SIZE);
+            DataInputStream dictionaries = new DataInputStream(new BufferedInputStream(Channels.newInputStream(log)));
+            this.userIds = new String[dictionaries.readInt()];
+            for (int i = 0; i < userIds.length; i++) {
+                userIds[i] = dictionaries.readUTF();
+            }
+            this.versions = new long[dictionaries.readInt()];
+            for (int i = 0; i < versions.length; i++) {
+                versions[i] = dictionaries.readLong();
+            }
+        }
+
+        /**
+         * Finds the events of a transaction, in the order they were written.
+         *
+         * @param transactionId The ID of the transaction.
+         * @return              The list of events of the transaction, empty if there are none.
+         */
+        List<Event> findTransaction(String transactionId) throws IOException {
+            return find(tablePosition(1), transactionId, true);
+        }
+
+        /**
+         * Finds the events of a user, in the order they were written.
+         *
+         * @param userId The ID of the user.
+         * @return       The list of events of the user, empty if there are none.
+         */
+        List<Event> findUser(String userId) throws IOException {
+            return find(tablePosition(2), userId, false);
+        }
+
+        private long tablePosition(int table) {
+            return HEADER_SIZE + (long) table * count * 8;
+        }
+
+        private List<Event> find(long tablePosition, String id, boolean byTransaction) throws IOException {
+            int hash = id.hashCode();
+            // Binary search for the first key with this hash
+            int low = 0;
+            int high = count;
+            long firstKey = (long) hash << 32;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (readLong(tablePosition + middle * 8L) < firstKey) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            // Keys with the same hash may belong to other ids, so every record is checked
+            List<Event> events = new ArrayList<>();
+            for (int i = low; i < count; i++) {
+                long key = readLong(tablePosition + i * 8L);
+                if ((int) (key >> 32) != hash) {
+                    break;
+                }
+                Event event = readRecord((int) (key & 0xFFFFFFFFL));
+                if (id.equals(byTransaction ? event.transactionId : event.userId)) {
+                    events.add(event);
+                }
+            }
+            return events;
+        }
+
+        private long readLong(long position) throws IOException {
+            longBuffer.clear();
+            readFully(index, longBuffer, position);
+            return longBuffer.getLong();
+        }
+
+        private Event readRecord(int recordNumber) throws IOException {
+            long offset = readLong(HEADER_SIZE + recordNumber * 8L);
+            long end = recordNumber + 1 < count ? readLong(HEADER_SIZE + (recordNumber + 1) * 8L) : log.size();
+            ByteBuffer bytes = ByteBuffer.allocate((int) (end - offset));
+            readFully(log, bytes, offset);
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes.array()));
+            int flags = record.readUnsignedByte();
+            String status = (flags & FLAG_DECLINED) == 0 ? Event.STATUS_APPROVED : Event.STATUS_DECLINED;
+            int code = record.readUnsignedByte();
+            String userId = userIds[readVarInt(record)];
+            long binVersion = (flags & FLAG_BIN_VERSION) == 0 ? 0 : versions[readVarInt(record)];
+            String transactionId = record.readUTF();
+            String argument = (flags & FLAG_ARGUMENT) == 0 ? "" : record.readUTF();
+            String message = code == REASON_OTHER ? argument : argument + REASONS[code];
+            return new Event(transactionId, userId, status, message, code, binVersion);
+        }
+
+        private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    throw new EOFException();
+                }
+            }
+            buffer.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            log.close();
+            index.close();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.playtech.assignment;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * A class named EventLogQuery which looks up the outcome of transactions in a binary event log
+ * written with the --event-log option of TransactionProcessorSample.
+ */
+public class EventLogQuery {
+
+    /**
+     * Main method to execute a lookup. Matching events are printed in the format of the events file,
+     * followed by the version of the BIN mappings for card decisions.
+     *
+     * @param args Command-line arguments:
+     *             args[0]: Path to the binary event log.
+     *             args[1]: Either "transaction" or "user".
+     *             args[2]: ID of the transaction or user to look up.
+     * @throws IOException If an I/O error occurs while reading the log.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 3 || !(args[1].equals("transaction") || args[1].equals("user"))) {
+            System.err.println("Usage: EventLogQuery <event log> transaction|user <id>");
+            System.exit(2);
+        }
+        try (EventLog.Reader reader = new EventLog.Reader(Paths.get(args[0]))) {
+            List<Event> events = args[1].equals("transaction") ? reader.findTransaction(args[2]) : reader.findUser(args[2]);
+            if (events.isEmpty()) {
+                System.err.println("No events found for " + args[1] + " " + args[2]);
+                System.exit(1);
+            }
+            for (Event event : events) {
+                String binVersion = event.binVersion == 0 ? "" : ",bin_version=" + event.binVersion;
+                System.out.println(event.transactionId + "," + event.status + "," + event.message + binVersion);
+            }
+        }
+    }
+}
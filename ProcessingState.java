@@ -0,0 +1,263 @@
+package com.playtech.assignment;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * A class named ProcessingState holding everything a run has learned about the transaction history.
+ * The state is written at the end of a run and loaded by the next one, so that only the new transactions
+ * file has to be processed while the balances and the events of the new transactions stay identical to
+ * reprocessing the whole history.
+ * <p>
+ * The one exception is the "Cannot withdraw with new account" decline of the unique CARD account check.
+ * That check runs over the whole history after all other checks and may pick a different account once more
+ * transactions are known, while the events of earlier runs have already been written. These declines are
+ * therefore not reproducible across runs; they never affect balances.
+ */
+class ProcessingState {
+
+    /**
+     * Section headers of the state file. Each header is followed by a comma and the number of rows of the
+     * section, so rows are never mistaken for headers, whatever text the ids and accounts hold.
+     */
+    private static final String SECTION_OPENING_BALANCES = "[opening_balances]";
+    private static final String SECTION_BALANCES = "[balances]";
+    private static final String SECTION_USED_IDS = "[used_transaction_ids]";
+    private static final String SECTION_SKIPPED_IDS = "[skipped_transaction_ids]";
+    private static final String SECTION_DECLINED = "[declined_transactions]";
+    private static final String SECTION_ACCEPTED = "[account_owners]";
+    private static final String SECTION_DEPOSITS = "[deposited_accounts]";
+    private static final String SECTION_CARD_ACCOUNTS = "[card_accounts]";
+
+    /**
+     * Balances of the users as first read from the users file, keyed by user ID. Withdrawals are
+     * validated against these, as in a single run over the whole history.
+     */
+    private final Map<String, Double> openingBalances = new LinkedHashMap<>();
+    /**
+     * Balances of the users after the last run, keyed by user ID.
+     */
+    private final Map<String, Double> balances = new LinkedHashMap<>();
+    /**
+     * Transaction IDs that have already been used.
+     */
+    private final Set<String> usedTransactionIds = new HashSet<>();
+    /**
+     * Transaction IDs that were declined before being marked as used; their balance is never updated.
+     */
+    private final Set<String> skippedTransactionIds = new HashSet<>();
+    /**
+     * Maps declined transaction ids to the account that was declined.
+     */
+    private final TreeMap<String, String> declinedTransactionTracker = new TreeMap<>();
+    /**
+     * Maps user ids to the account of their last accepted transaction.
+     */
+    private final TreeMap<String, String> acceptedTransactionTracker = new TreeMap<>();
+    /**
+     * Maps user ids to the accounts that have been used for a successful deposit.
+     */
+    private final Map<String, Set<String>> successfulDeposits = new HashMap<>();
+    /**
+     * Maps user ids to the accounts they have used with the CARD method.
+     */
+    private final Map<String, Set<String>> cardAccounts = new HashMap<>();
+    /**
+     * All accounts appearing in cardAccounts before the current run. Rebuilt on load, not persisted.
+     */
+    private final Set<String> knownCardAccounts = new HashSet<>();
+
+    /**
+     * Loads the state from a file. A missing file yields an empty state, as for the very first run.
+     *
+     * @param filePath The path to the state file.
+     * @return         The state read from the file.
+     */
+    static ProcessingState load(final Path filePath) {
+        ProcessingState state = new ProcessingState();
+        if (!Files.exists(filePath)) {
+            return state;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath.toFile()))) {
+            String header;
+            while ((header = reader.readLine()) != null) {
+                int comma = header.lastIndexOf(',');
+                if (!header.startsWith("[") || comma < 0) {
+                    throw new IOException("Expected a state section header but found " + header);
+                }
+                String section = header.substring(0, comma);
+                int rows = Integer.parseInt(header.substring(comma + 1));
+                int columns = SECTION_USED_IDS.equals(section) || SECTION_SKIPPED_IDS.equals(section) ? 1 : 2;
+                for (int i = 0; i < rows; i++) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        throw new IOException("State section " + section + " ends after " + i + " of " + rows + " rows");
+                    }
+                    String[] parts = line.split(",", -1);
+                    if (parts.length != columns) {
+                        throw new IOException("State section " + section + " has a row with " + parts.length + " columns instead of " + columns + ": " + line);
+                    }
+                    switch (section) {
+                        case SECTION_OPENING_BALANCES -> state.openingBalances.put(parts[0], Double.parseDouble(parts[1]));
+                        case SECTION_BALANCES -> state.balances.put(parts[0], Double.parseDouble(parts[1]));
+                        case SECTION_USED_IDS -> state.usedTransactionIds.add(parts[0]);
+                        case SECTION_SKIPPED_IDS -> state.skippedTransactionIds.add(parts[0]);
+                        case SECTION_DECLINED -> state.declinedTransactionTracker.put(parts[0], parts[1]);
+                        case SECTION_ACCEPTED -> state.acceptedTransactionTracker.put(parts[0], parts[1]);
+                        case SECTION_DEPOSITS -> state.successfulDeposits.computeIfAbsent(parts[0], k -> new HashSet<>()).add(parts[1]);
+                        case SECTION_CARD_ACCOUNTS -> {
+                            state.cardAccounts.computeIfAbsent(parts[0], k -> new HashSet<>()).add(parts[1]);
+                            state.knownCardAccounts.add(parts[1]);
+                        }
+                        default -> throw new IOException("Unknown state section " + section);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return state;
+    }
+
+    /**
+     * Writes the state to a file. The file is replaced only once it has been written completely,
+     * so an interrupted run leaves the previous state intact.
+     *
+     * @param filePath The path to the state file.
+     */
+    void save(final Path filePath) {
+        Path tempPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+        try (final Writer writer = new BufferedWriter(new FileWriter(tempPath.toFile(), false))) {
+            writeBalances(writer, SECTION_OPENING_BALANCES, openingBalances);
+            writeBalances(writer, SECTION_BALANCES, balances);
+            writeIds(writer, SECTION_USED_IDS, usedTransactionIds);
+            writeIds(writer, SECTION_SKIPPED_IDS, skippedTransactionIds);
+            writePairs(writer, SECTION_DECLINED, declinedTransactionTracker);
+            writePairs(writer, SECTION_ACCEPTED, acceptedTransactionTracker);
+            writeAccounts(writer, SECTION_DEPOSITS, successfulDeposits);
+            writeAccounts(writer, SECTION_CARD_ACCOUNTS, cardAccounts);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void writeHeader(Writer writer, String section, int rows) throws IOException {
+        writer.append(section).append(",").append(String.valueOf(rows)).append("\n");
+    }
+
+    private static void writeBalances(Writer writer, String section, Map<String, Double> balances) throws IOException {
+        writeHeader(writer, section, balances.size());
+        for (Map.Entry<String, Double> entry : balances.entrySet()) {
+            // Double.toString round-trips exactly, unlike the two decimals of balances.csv
+            writer.append(entry.getKey()).append(",").append(Double.toString(entry.getValue())).append("\n");
+        }
+    }
+
+    private static void writeIds(Writer writer, String section, Set<String> ids) throws IOException {
+        writeHeader(writer, section, ids.size());
+        for (String id : ids) {
+            writer.append(id).append("\n");
+        }
+    }
+
+    private static void writePairs(Writer writer, String section, Map<String, String> pairs) throws IOException {
+        writeHeader(writer, section, pairs.size());
+        for (Map.Entry<String, String> entry : pairs.entrySet()) {
+            writer.append(entry.getKey()).append(",").append(entry.getValue()).append("\n");
+        }
+    }
+
+    private static void writeAccounts(Writer writer, String section, Map<String, Set<String>> accounts) throws IOException {
+        int rows = 0;
+        for (Set<String> accountNumbers : accounts.values()) {
+            rows += accountNumbers.size();
+        }
+        writeHeader(writer, section, rows);
+        for (Map.Entry<String, Set<String>> entry : accounts.entrySet()) {
+            for (String account : entry.getValue()) {
+                writer.append(entry.getKey()).append(",").append(account).append("\n");
+            }
+        }
+    }
+
+    /**
+     * Replaces the balances read from the users file with the opening balances of the first run that saw
+     * each user, for validating withdrawals. Users seen for the first time keep their balance from the users
+     * file, which becomes their opening balance.
+     *
+     * @param users The list of users whose opening balances need to be restored.
+     */
+    void restoreOpeningBalances(List<User> users) {
+        for (User user : users) {
+            Double balance = openingBalances.putIfAbsent(user.getUser_id(), user.getBalance());
+            if (balance != null) {
+                user.setBalance(balance);
+            }
+        }
+    }
+
+    /**
+     * Replaces the opening balances with the balances of the last run, before the approved transactions
+     * of this run are applied. Users without a previous run keep their opening balance.
+     *
+     * @param users The list of users whose balances need to be restored.
+     */
+    void restoreBalances(List<User> users) {
+        for (User user : users) {
+            Double balance = balances.get(user.getUser_id());
+            if (balance != null) {
+                user.setBalance(balance);
+            }
+        }
+    }
+
+    /**
+     * Stores the current balances of the users, keeping users that are no longer in the users file.
+     *
+     * @param users The list of users whose balances need to be stored.
+     */
+    void captureBalances(List<User> users) {
+        for (User user : users) {
+            balances.put(user.getUser_id(), user.getBalance());
+        }
+    }
+
+    /**
+     * Getter methods for retrieving objects of the ProcessingState class.
+     */
+    public Set<String> getUsedTransactionIds() {
+        return this.usedTransactionIds;
+    }
+
+    public Set<String> getSkippedTransactionIds() {
+        return this.skippedTransactionIds;
+    }
+
+    public TreeMap<String, String> getDeclinedTransactionTracker() {
+        return this.declinedTransactionTracker;
+    }
+
+    public TreeMap<String, String> getAcceptedTransactionTracker() {
+        return this.acceptedTransactionTracker;
+    }
+
+    public Map<String, Set<String>> getSuccessfulDeposits() {
+        return this.successfulDeposits;
+    }
+
+    public Map<String, Set<String>> getCardAccounts() {
+        return this.cardAccounts;
+    }
+
+    public Set<String> getKnownCardAccounts() {
+        return this.knownCardAccounts;
+    }
+}
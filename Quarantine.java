@@ -0,0 +1,85 @@
+package com.playtech.assignment;
+
+import java.io.*;
+import java.nio.file.Path;
+
+/**
+ * A class named Quarantine which collects malformed input rows together with the reason they were
+ * skipped or declined, so they can be inspected without stopping the processing of the other rows.
+ */
+class Quarantine implements Closeable {
+
+    /**
+     * Writer of the quarantine file, or null if quarantined rows are only counted.
+     */
+    private final Writer writer;
+    /**
+     * Number of rows quarantined so far.
+     */
+    private int count;
+
+    private Quarantine(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Creates a quarantine that only counts the rows.
+     */
+    static Quarantine discarding() {
+        return new Quarantine(null);
+    }
+
+    /**
+     * Creates a quarantine writing the rows to a CSV file with the reason in the first column.
+     *
+     * @param filePath The path to the quarantine file.
+     */
+    static Quarantine open(final Path filePath) {
+        try {
+            Writer writer = new BufferedWriter(new FileWriter(filePath.toFile(), false));
+            writer.append("REASON,ROW\n");
+            return new Quarantine(writer);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds a raw input row.
+     *
+     * @param row    The row as it was read from the input file.
+     * @param reason The reason the row was quarantined.
+     */
+    void add(String row, String reason) {
+        count++;
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.append(reason).append(",").append(row).append("\n");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds a transaction that could be parsed but has a malformed account number.
+     *
+     * @param transaction The transaction to add, written as the row it was read from.
+     * @param reason      The reason the transaction was quarantined.
+     */
+    void add(Transaction transaction, String reason) {
+        add(transaction.getLine(), reason);
+    }
+
+    public int getCount() {
+        return this.count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.playtech.assignment;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class named ReplayCheck which checks that processing a transactions file in several runs with the
+ * --state option of TransactionProcessorSample gives the same result as processing it in a single run.
+ * <p>
+ * The transactions are split into consecutive parts of equal size. The balances after the last run must
+ * equal the balances of the single run, and the events of all runs together must equal the events of the
+ * single run. "Cannot withdraw with new account" declines are left out of the comparison, they are not
+ * reproducible across runs (see ProcessingState).
+ */
+public class ReplayCheck {
+
+    private static final String NOT_REPRODUCIBLE = "Cannot withdraw with new account";
+
+    /**
+     * Main method to execute the check. Prints the first difference found and exits with status 1 if
+     * the results differ.
+     *
+     * @param args Command-line arguments:
+     *             args[0]: Path to the file containing user data.
+     *             args[1]: Path to the file containing transaction data.
+     *             args[2]: Path to the file containing BIN mappings.
+     *             args[3]: Optional number of runs to split the transactions over, 2 by default.
+     * @throws IOException If an I/O error occurs while reading or writing files.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 3 || args.length > 4) {
+            System.err.println("Usage: ReplayCheck <users> <transactions> <bin mappings> [runs]");
+            System.exit(2);
+        }
+        int runs = args.length == 4 ? Integer.parseInt(args[3]) : 2;
+        if (runs < 1) {
+            throw new IllegalArgumentException("runs must be at least 1");
+        }
+        Path workDirectory = Files.createTempDirectory("replay-check");
+
+        // Single run over the whole history
+        Path fullDirectory = Files.createDirectory(workDirectory.resolve("full"));
+        TransactionProcessorSample.main(new String[]{args[0], args[1], args[2],
+                fullDirectory.resolve("balances.csv").toString(), fullDirectory.resolve("events.csv").toString()});
+
+        // One run per part, continuing from the state of the previous run
+        List<String> rows = readRows(Paths.get(args[1]));
+        String header = rows.remove(0);
+        Path statePath = workDirectory.resolve("state");
+        List<String> events = new ArrayList<>();
+        Path balancesPath = null;
+        for (int run = 0; run < runs; run++) {
+            Path runDirectory = Files.createDirectory(workDirectory.resolve("run" + run));
+            List<String> part = new ArrayList<>(rows.subList(rows.size() * run / runs, rows.size() * (run + 1) / runs));
+            part.add(0, header);
+            Path transactionsPath = runDirectory.resolve("transactions.csv");
+            Files.write(transactionsPath, part);
+            balancesPath = runDirectory.resolve("balances.csv");
+            Path eventsPath = runDirectory.resolve("events.csv");
+            TransactionProcessorSample.main(new String[]{args[0], transactionsPath.toString(), args[2],
+                    balancesPath.toString(), eventsPath.toString(), "--state=" + statePath});
+            List<String> runEvents = readRows(eventsPath);
+            events.addAll(runEvents.subList(1, runEvents.size()));
+        }
+
+        List<String> fullEvents = readRows(fullDirectory.resolve("events.csv"));
+        boolean same = compare("balances", readRows(fullDirectory.resolve("balances.csv")), readRows(balancesPath))
+                && compare("events", withoutNotReproducible(fullEvents.subList(1, fullEvents.size())), withoutNotReproducible(events));
+        if (!same) {
+            System.out.println("Results kept in " + workDirectory);
+            System.exit(1);
+        }
+        System.out.println("Same balances and events in " + runs + " runs as in a single run");
+        Coordinator.deleteDirectory(workDirectory);
+    }
+
+    private static List<String> readRows(Path filePath) throws IOException {
+        List<String> rows = new ArrayList<>();
+        try (BufferedReader reader = CompressedFiles.openReader(filePath)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                rows.add(line);
+            }
+        }
+        return rows;
+    }
+
+    private static List<String> withoutNotReproducible(List<String> events) {
+        List<String> kept = new ArrayList<>();
+        for (String event : events) {
+            if (!event.endsWith(NOT_REPRODUCIBLE)) {
+                kept.add(event);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Compares the rows of a file of the single run with the rows of the split runs.
+     *
+     * @return True if the rows are equal, false otherwise.
+     */
+    private static boolean compare(String name, List<String> expected, List<String> actual) {
+        for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+            String expectedRow = i < expected.size() ? expected.get(i) : "<none>";
+            String actualRow = i < actual.size() ? actual.get(i) : "<none>";
+            if (!expectedRow.equals(actualRow)) {
+                System.out.println("Different " + name + " at row " + (i + 1) + ": single run " + expectedRow + ", split runs " + actualRow);
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,88 @@
+package com.playtech.assignment;
+
+/**
+ * A class named Transaction representing a financial transaction.
+ */
+class Transaction {
+    /**
+     * ID of the transaction.
+     */
+    private final String transaction_id;
+    /**
+     * ID of the user.
+     */
+    private final String user_id;
+    /**
+     * Transaction type (allowed values are DEPOSIT or WITHDRAW).
+     */
+    private final String type;
+    /**
+     * Amount of the transaction.
+     */
+    private final double amount;
+    /**
+     * Payment method used for the transaction.
+     */
+    private final String method;
+    /**
+     * Account number associated with the transaction.
+     */
+    private final String account_number;
+    /**
+     * Row of the transactions file, kept only for transactions with a malformed account number.
+     */
+    private final String line;
+
+    /**
+     * Constructor to initialize Transaction objects.
+     */
+    public Transaction(String transaction_id, String user_id, String type, double amount,
+                       String method, String account_number){
+        this(transaction_id, user_id, type, amount, method, account_number, null);
+    }
+
+    /**
+     * Constructor to initialize Transaction objects that keep the row they were read from.
+     */
+    public Transaction(String transaction_id, String user_id, String type, double amount,
+                       String method, String account_number, String line){
+        this.transaction_id = transaction_id;
+        this.user_id = user_id;
+        this.amount = amount;
+        this.type = type;
+        this.method = method;
+        this.account_number = account_number;
+        this.line = line;
+    }
+
+    /**
+     * Getter methods for retrieving objects of the Transaction class.
+     */
+    public String getTransaction_id() {
+        return this.transaction_id;
+    }
+
+    public String getUser_id() {
+        return this.user_id;
+    }
+
+    public String getType() {
+        return this.type;
+    }
+
+    public String getMethod(){
+        return this.method;
+    }
+
+    public String getAccount_Number(){
+        return this.account_number;
+    }
+
+    public double getAmount() {
+        return this.amount;
+    }
+
+    public String getLine() {
+        return this.line;
+    }
+}
@@ -21,36 +21,146 @@ public class TransactionProcessorSample {
      *             args[2]: Path to the file containing BIN mappings.
      *             args[3]: Path to write the balances output file.
      *             args[4]: Path to write the events output file.
+     *             Optional arguments after these:
+     *             --state=path: State file of the previous run. It is loaded if it exists, so only the new
+     *             transactions are processed, and rewritten with the state after this run.
+     *             --event-log=path: Also write the events to an indexed binary log, see EventLogQuery. The log
+     *             records the BIN mappings version of each card decision.
+     *             --quarantine=path: Write malformed transaction rows and the reason for skipping or
+     *             declining them to this file.
+     *             --bin-reload=seconds: Check the BIN mappings file for changes at this interval and use the
+     *             new mappings for the transactions processed after a change. The version used for each card
+     *             decision is always written, see --bin-versions.
+     *             --bin-versions=path: Write the BIN mappings version of each card decision to this file. With
+     *             --bin-reload it defaults to the events file path followed by ".bin_versions.csv".
+     *             --report=path: Write per-user totals, counts, decline reasons and accounts of this run.
+     *             --workers=n: Split the transactions by user over n worker processes, see Coordinator.
+     *             --worker: Run as a worker of a coordinator, which verifies unique CARD account usage itself.
      * @throws IOException If an I/O error occurs while reading or writing files.
      */
     public static void main(final String[] args) throws IOException {
+        String workers = getOption(args, "workers");
+        if (workers != null) {
+            Coordinator.run(args, Integer.parseInt(workers));
+            return;
+        }
+
+        // Malformed transaction rows are set aside instead of stopping the processing
+        String quarantinePath = getOption(args, "quarantine");
+        Quarantine quarantine = quarantinePath == null ? Quarantine.discarding() : Quarantine.open(Paths.get(quarantinePath));
+
         // Read users, transactions, and BIN mappings from files
         List<User> users = TransactionProcessorSample.readUsers(Paths.get(args[0]));
-        List<Transaction> transactions = TransactionProcessorSample.readTransactions(Paths.get(args[1]));
-        List<BinMapping> binMappings = TransactionProcessorSample.readBinMappings(Paths.get(args[2]));
+        List<Transaction> transactions = TransactionProcessorSample.readTransactions(Paths.get(args[1]), quarantine);
+        BinTable.Source binTables = new BinTable.Source(Paths.get(args[2]));
+        String binReload = getOption(args, "bin-reload");
+        if (binReload != null) {
+            long reloadSeconds = Long.parseLong(binReload);
+            if (reloadSeconds < 1) {
+                throw new IllegalArgumentException("--bin-reload must be at least 1 second");
+            }
+            binTables.watch(reloadSeconds * 1000);
+        }
+
+        // Continue from the state of the previous run, if there is one
+        String statePath = getOption(args, "state");
+        ProcessingState state = statePath == null ? new ProcessingState() : ProcessingState.load(Paths.get(statePath));
+        state.restoreOpeningBalances(users);
 
         // Process transactions and generate events
-        List<Event> events = TransactionProcessorSample.processTransactions(users, transactions, binMappings);
+        String reportPath = getOption(args, "report");
+        UserReport report = reportPath == null ? null : new UserReport(users);
+        List<Event> events = TransactionProcessorSample.processTransactions(users, transactions, binTables, state, quarantine, !hasFlag(args, "worker"), report);
+        binTables.close();
+        quarantine.close();
+        if (quarantine.getCount() > 0) {
+            System.out.println(quarantine.getCount() + " malformed transaction rows quarantined");
+        }
+        // Apply the approved transactions to the balances of the last run
+        state.restoreBalances(users);
         // Process transactions and generate events
-        updateBalances(users, transactions, events);
+        updateBalances(users, transactions, events, state);
         // Write updated user balances to a file
         TransactionProcessorSample.writeBalances(Paths.get(args[3]), users);
         // Write events to a file
         TransactionProcessorSample.writeEvents(Paths.get(args[4]), events);
+        // Write the BIN mappings versions of the card decisions
+        String binVersionsPath = getBinVersionsPath(args);
+        if (binVersionsPath != null) {
+            TransactionProcessorSample.writeBinVersions(Paths.get(binVersionsPath), transactions, events);
+        }
+        // Write the per-user report
+        if (report != null) {
+            report.write(Paths.get(reportPath));
+        }
+        // Write events to the binary log
+        String eventLogPath = getOption(args, "event-log");
+        if (eventLogPath != null) {
+            EventLog.write(Paths.get(eventLogPath), events);
+        }
+        // Write the state for the next run
+        if (statePath != null) {
+            state.captureBalances(users);
+            state.save(Paths.get(statePath));
+        }
+    }
+
+    /**
+     * Looks up an optional argument of the form --name=value following the five file arguments.
+     *
+     * @param args Command-line arguments.
+     * @param name The name of the option.
+     * @return     The value of the option, or null if it is not given.
+     */
+    static String getOption(final String[] args, final String name) {
+        String prefix = "--" + name + "=";
+        for (int i = 5; i < args.length; i++) {
+            if (args[i].startsWith(prefix)) {
+                return args[i].substring(prefix.length());
+            }
+        }
+        return null;
     }
 
     /**
-     * Reads users from a CSV file.
+     * Finds the path of the BIN mappings versions file, which is always written when the mappings can be reloaded.
+     *
+     * @param args Command-line arguments.
+     * @return     The path given with --bin-versions, the default path if only --bin-reload is given, or null.
+     */
+    static String getBinVersionsPath(final String[] args) {
+        String binVersionsPath = getOption(args, "bin-versions");
+        if (binVersionsPath == null && getOption(args, "bin-reload") != null) {
+            binVersionsPath = args[4] + ".bin_versions.csv";
+        }
+        return binVersionsPath;
+    }
+
+    /**
+     * Checks for an optional argument of the form --name following the five file arguments.
+     *
+     * @param args Command-line arguments.
+     * @param name The name of the flag.
+     * @return     True if the flag is given, false otherwise.
+     */
+    static boolean hasFlag(final String[] args, final String name) {
+        for (int i = 5; i < args.length; i++) {
+            if (args[i].equals("--" + name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads users from a CSV file, which may be gzip compressed.
      *
      * @param filePath The path to the CSV file containing users.
      * @return         The list of users read from the file.
      */
-    private static List<User> readUsers(final Path filePath) {
+    static List<User> readUsers(final Path filePath) {
         List<User> users = new ArrayList<>();
-        BufferedReader reader;
-        try {
-            File file = new File(String.valueOf(filePath));
-            reader = new BufferedReader(new FileReader(file));
+        try (BufferedReader reader = CompressedFiles.openReader(filePath)) {
             // Skip the first line (header line)
             reader.readLine();
             String line;
@@ -67,23 +177,24 @@ public class TransactionProcessorSample {
     }
 
     /**
-     * Reads transactions from a CSV file.
+     * Reads transactions from a CSV file, which may be gzip compressed. Rows with a wrong number of columns
+     * or a malformed amount are skipped and added to the quarantine.
      *
-     * @param filePath The path to the CSV file containing transactions.
-     * @return         The list of transactions read from the file.
+     * @param filePath   The path to the CSV file containing transactions.
+     * @param quarantine The quarantine receiving the malformed rows.
+     * @return           The list of transactions read from the file.
      */
-    private static List<Transaction> readTransactions(final Path filePath) {
+    private static List<Transaction> readTransactions(final Path filePath, final Quarantine quarantine) {
         List<Transaction> transactions = new ArrayList<>();
-        BufferedReader reader;
-        try {
-            File file = new File(String.valueOf(filePath));
-            reader = new BufferedReader(new FileReader(file));
+        try (BufferedReader reader = CompressedFiles.openReader(filePath)) {
             // Skip the first line (header line)
             reader.readLine();
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                transactions.add(new Transaction(parts[0], parts[1], parts[2], Double.parseDouble(parts[3]), parts[4], parts[5]));
+                Transaction transaction = parseTransaction(line, quarantine);
+                if (transaction != null) {
+                    transactions.add(transaction);
+                }
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -91,12 +202,43 @@ public class TransactionProcessorSample {
         return transactions;
     }
 
-    private static List<BinMapping> readBinMappings(final Path filePath) {
+    /**
+     * Parses a row of the transactions file. Rows with a wrong number of columns or a malformed amount
+     * are added to the quarantine.
+     *
+     * @param line       The row to parse.
+     * @param quarantine The quarantine receiving the row if it is malformed.
+     * @return           The transaction, or null if the row is empty or malformed.
+     */
+    static Transaction parseTransaction(final String line, final Quarantine quarantine) {
+        if (line.isEmpty()) {
+            return null;
+        }
+        String[] parts = line.split(",", -1);
+        if (parts.length != 6) {
+            quarantine.add(line, "Wrong number of columns");
+            return null;
+        }
+        // Checking the syntax first keeps Double.parseDouble from throwing on garbage
+        if (!isAmount(parts[3])) {
+            quarantine.add(line, "Malformed amount");
+            return null;
+        }
+        // Rows that will be declined for a malformed account number keep their text for the quarantine
+        String row = isMalformedAccount(parts[4], parts[5]) ? line : null;
+        return new Transaction(parts[0], parts[1], parts[2], Double.parseDouble(parts[3]), parts[4], parts[5], row);
+    }
+
+    /**
+     * Reads BIN mappings from a CSV file, which may be gzip compressed.
+     *
+     * @param filePath The path to the CSV file containing BIN mappings.
+     * @return         The list of BIN mappings read from the file.
+     */
+    static List<BinMapping> readBinMappings(final Path filePath) {
         List<BinMapping> binMappings = new ArrayList<>();
-        BufferedReader reader;
-        try {
-            File file = new File(String.valueOf(filePath));
-            reader = new BufferedReader(new FileReader(file));
+        // The file is read again on every reload, so the reader is closed
+        try (BufferedReader reader = CompressedFiles.openReader(filePath)) {
             // Skip the first line (header line)
             reader.readLine();
             String line;
@@ -110,57 +252,155 @@ public class TransactionProcessorSample {
         return binMappings;
     }
 
+    /**
+     * Checks that a value is a plain decimal number, optionally signed, as accepted by Double.parseDouble.
+     *
+     * @param value The value to check.
+     * @return      True if the value is a plain decimal number, false otherwise.
+     */
+    private static boolean isAmount(String value) {
+        int i = 0;
+        int length = value.length();
+        if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            i++;
+        }
+        int digits = 0;
+        boolean point = false;
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                return false;
+            }
+        }
+        return digits > 0;
+    }
+
+    /**
+     * Checks whether an account number cannot be validated for its payment method.
+     *
+     * @param method        The payment method of the transaction.
+     * @param accountNumber The account number of the transaction.
+     * @return              True if a card number has no numeric BIN prefix or an IBAN is malformed, false otherwise.
+     */
+    private static boolean isMalformedAccount(String method, String accountNumber) {
+        if (Objects.equals(method, "CARD")) {
+            return parseCardPrefix(accountNumber) < 0;
+        }
+        return Objects.equals(method, "TRANSFER") && !isWellFormedIban(accountNumber);
+    }
+
+    /**
+     * Parses the first 10 digits of a card number for BIN matching.
+     *
+     * @param accountNumber The card number.
+     * @return              The first 10 digits as a number, or -1 if the card number is shorter or not numeric.
+     */
+    private static long parseCardPrefix(String accountNumber) {
+        if (accountNumber.length() < 10) {
+            return -1;
+        }
+        long prefix = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = accountNumber.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            prefix = prefix * 10 + (c - '0');
+        }
+        return prefix;
+    }
+
+    /**
+     * Checks that an IBAN can be converted to its numeric form, which only letters and digits can.
+     *
+     * @param iban The IBAN to check.
+     * @return     True if the IBAN has at least four characters, all ASCII letters or digits, false otherwise.
+     */
+    private static boolean isWellFormedIban(String iban) {
+        if (iban.length() < 4) {
+            return false;
+        }
+        for (int i = 0; i < iban.length(); i++) {
+            char c = iban.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Processes transactions and generates events based on transaction validation.
      *
      * @param users           The list of users.
      * @param transactions    The list of transactions to process.
-     * @param binMappings     The list of BIN mappings.
+     * @param binTables       The source of the current BIN mappings snapshot.
+     * @param state           The state of the previously processed transactions, updated with these transactions.
+     * @param quarantine      The quarantine receiving transactions declined for a malformed account number.
+     * @param verifyAccounts  Whether to verify unique CARD account usage after processing all transactions.
+     * @param report          The report aggregating the events per user, or null if no report is written.
      * @return                The list of events generated during transaction processing.
      */
-    private static List<Event> processTransactions(final List<User> users, final List<Transaction> transactions, final List<BinMapping> binMappings) {
+    private static List<Event> processTransactions(final List<User> users, final List<Transaction> transactions, final BinTable.Source binTables, final ProcessingState state, final Quarantine quarantine, final boolean verifyAccounts, final UserReport report) {
         // Set containing transaction ids that have already been used
-        Set<String> usedTransactionIds = new HashSet<>();
+        Set<String> usedTransactionIds = state.getUsedTransactionIds();
         // List of all th events
         List<Event> events = new ArrayList<>();
         // Maps declined transaction ids to the amount that was declined
-        TreeMap<String, String> declinedTransactionTracker = new TreeMap<>();
+        TreeMap<String, String> declinedTransactionTracker = state.getDeclinedTransactionTracker();
         // Maps accepted transaction ids to the amount that was accepted
-        TreeMap<String, String> acceptedTransactionTracker = new TreeMap<>();
+        TreeMap<String, String> acceptedTransactionTracker = state.getAcceptedTransactionTracker();
         // Maps successful deposit transaction ids to the amount that was deposited
-        Map<String, Set<String>> successfulDeposits = new HashMap<>();
+        Map<String, Set<String>> successfulDeposits = state.getSuccessfulDeposits();
         // Process each transaction
         for (Transaction transaction : transactions) {
+            // The snapshot is taken once per transaction, a reload only affects the following transactions
+            BinTable binTable = binTables.current();
             if (verifyUser(transaction,events, acceptedTransactionTracker)){
-                continue;
-            }
-            if (verifyTransactionIdAndUser(usedTransactionIds, transaction, events, users, declinedTransactionTracker)) {
-                continue;
+                // Remember ids that never got marked as used, later runs must not update balances with them
+                if (!usedTransactionIds.contains(transaction.getTransaction_id())) {
+                    state.getSkippedTransactionIds().add(transaction.getTransaction_id());
+                }
+            } else if (verifyTransactionIdAndUser(usedTransactionIds, transaction, events, users, declinedTransactionTracker)
+                    || verifyDepositWithDraw(transaction, events, users, declinedTransactionTracker, successfulDeposits)
+                    || validatePaymentMethod(transaction, events, users, binTable, declinedTransactionTracker, quarantine)) {
+                // Declined, the failing check has added the event
+            } else {
+                // If none of the above checks declined it, then transaction is approved
+                long binVersion = Objects.equals(transaction.getMethod(), "CARD") ? binTable.getVersion() : 0;
+                events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_APPROVED, "OK", EventLog.REASON_OK, binVersion));
+                acceptedTransactionTracker.put(transaction.getUser_id(), transaction.getAccount_Number());
             }
-            if (verifyDepositWithDraw(transaction, events, users, declinedTransactionTracker, successfulDeposits)){
-                continue;
+            // Every transaction has exactly one event at this point
+            if (report != null) {
+                report.record(transaction, events.get(events.size() - 1));
             }
-            if (validatePaymentMethod(transaction, events, users, binMappings, declinedTransactionTracker)) {
-                continue;
+        }
+        // Verify unique account usage, unless a coordinator does it over all partitions
+        if (verifyAccounts) {
+            verifyUniqueAccount(transactions, events, declinedTransactionTracker, state);
+            if (report != null) {
+                for (int i = transactions.size(); i < events.size(); i++) {
+                    report.recordDecline(events.get(i));
+                }
             }
-            // If none of the above if statements is reached, then transaction is approved
-            events.add(new Event(transaction.getTransaction_id(), Event.STATUS_APPROVED, "OK"));
-            acceptedTransactionTracker.put(transaction.getUser_id(), transaction.getAccount_Number());
         }
-        // Verify unique account usage
-        verifyUniqueAccount(transactions, events, declinedTransactionTracker);
         return events;
     }
 
     /**
-     * Writes balances to a CSV file.
+     * Writes balances to a CSV file, gzip compressed if its name ends with ".gz".
      *
      * @param filePath The path to the CSV file.
      * @param users   The list of users to write to the file.
      *
      */
     private static void writeBalances(final Path filePath, final List<User> users) {
-        try (final FileWriter writer = new FileWriter(filePath.toFile(), false)) {
+        try (final Writer writer = CompressedFiles.openWriter(filePath)) {
             writer.append("USER_ID,BALANCE\n");
             for (User user : users) {
                 String balance = String.format("%.2f",user.getBalance());
@@ -172,14 +412,14 @@ public class TransactionProcessorSample {
     }
 
     /**
-     * Writes events to a CSV file.
+     * Writes events to a CSV file, gzip compressed if its name ends with ".gz".
      *
      * @param filePath The path to the CSV file.
      * @param events   The list of events to write to the file.
      * @throws IOException If an I/O error occurs while writing the file.
      */
     private static void writeEvents(final Path filePath, final List<Event> events) throws IOException {
-        try (final FileWriter writer = new FileWriter(filePath.toFile(), false)) {
+        try (final Writer writer = CompressedFiles.openWriter(filePath)) {
             writer.append("transaction_id,status,message\n");
             for (final var event : events) {
                 writer.append(event.transactionId).append(",").append(event.status).append(",").append(event.message).append("\n");
@@ -187,6 +427,29 @@ public class TransactionProcessorSample {
         }
     }
 
+    /**
+     * Writes the BIN mappings version of every card decision to a CSV file, gzip compressed if its name
+     * ends with ".gz". ROW is the row of the decision in the events file, which tells transactions with
+     * the same ID apart.
+     *
+     * @param filePath     The path to the CSV file.
+     * @param transactions The list of processed transactions.
+     * @param events       The list of events, starting with one event per transaction in the same order.
+     * @throws IOException If an I/O error occurs while writing the file.
+     */
+    private static void writeBinVersions(final Path filePath, final List<Transaction> transactions, final List<Event> events) throws IOException {
+        try (final Writer writer = CompressedFiles.openWriter(filePath)) {
+            writer.append("ROW,TRANSACTION_ID,BIN_VERSION\n");
+            for (int i = 0; i < transactions.size(); i++) {
+                Event event = events.get(i);
+                if (event.binVersion != 0) {
+                    writer.append(String.valueOf(i + 1)).append(",").append(event.transactionId).append(",")
+                            .append(String.valueOf(event.binVersion)).append("\n");
+                }
+            }
+        }
+    }
+
     /**
      * Verifies the uniqueness of a transaction ID and checks if the associated user is valid and not frozen.
      * Adds corresponding events to the list and updates declinedTransactionTracker if the transaction or user is invalid.
@@ -201,7 +464,7 @@ public class TransactionProcessorSample {
     private static boolean verifyTransactionIdAndUser(Set<String> usedTransactionIds, Transaction transaction, List<Event> events, List<User> users, TreeMap<String, String> declinedTransactionTracker) {
         if (usedTransactionIds.contains(transaction.getTransaction_id())) {
             // Transaction ID is not unique
-            events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, "Non-unique transaction ID"));
+            events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, "Non-unique transaction ID", EventLog.REASON_NON_UNIQUE_ID));
             declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
             return true;
         }
@@ -213,14 +476,14 @@ public class TransactionProcessorSample {
         for (User user : users) {
             validUser_id.add(user.getUser_id());
             if (user.getFrozen() == 1) {
-                events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, "User is frozen"));
+                events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, "User is frozen", EventLog.REASON_USER_FROZEN));
                 declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
                 return true;
             }
         }
         // Case where user_id from Transactions does not exist in Users
         if (!validUser_id.contains(transaction.getUser_id())) {
-            events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, transaction.getUser_id() + "user_id from Transactions not in Users"));
+            events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, transaction.getUser_id() + "user_id from Transactions not in Users", EventLog.REASON_UNKNOWN_USER));
             declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
             return true;
         }
@@ -234,19 +497,23 @@ public class TransactionProcessorSample {
      * @param transaction              The transaction to validate.
      * @param events                   The list of events to update if a condition is violated.
      * @param users                    The list of users to compare transaction details with.
-     * @param binMappings              The list of BIN mappings for card transactions.
+     * @param binTable                 The snapshot of BIN mappings for card transactions.
      * @param declinedTransactionTracker The map tracking declined transactions and their associated accounts.
+     * @param quarantine               The quarantine receiving transactions with a malformed account number.
      * @return                         True if the transaction is invalid, false otherwise.
      */
-    private static boolean validatePaymentMethod(Transaction transaction, List<Event> events, List<User> users, List<BinMapping> binMappings, TreeMap<String, String> declinedTransactionTracker) {
+    private static boolean validatePaymentMethod(Transaction transaction, List<Event> events, List<User> users, BinTable binTable, TreeMap<String, String> declinedTransactionTracker, Quarantine quarantine) {
         // Case where the payment method is a transfer
         if (Objects.equals(transaction.getMethod(), "TRANSFER")) {
             // Remove whitespace from IBAN and ensure correct country code
             String iban = transaction.getAccount_Number().replaceAll("\\s", " ");
+            if (iban.length() < 2) {
+                return declineMalformedAccount(transaction, events, declinedTransactionTracker, quarantine, EventLog.REASON_MALFORMED_IBAN);
+            }
             for (User user : users) {
                 if (Objects.equals(transaction.getUser_id(), user.getUser_id())) {
                     if (!iban.substring(0, 2).equals(user.getCountry())) {
-                        events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, "Country code does not exist or is wrong"));
+                        events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, "Country code does not exist or is wrong", EventLog.REASON_WRONG_COUNTRY));
                         declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
                         return true;
                     }
@@ -254,6 +521,9 @@ public class TransactionProcessorSample {
             }
 
 
+            if (!isWellFormedIban(iban)) {
+                return declineMalformedAccount(transaction, events, declinedTransactionTracker, quarantine, EventLog.REASON_MALFORMED_IBAN);
+            }
             // Move the first four characters to the end
             iban = iban.substring(4) + iban.substring(0, 4);
             // Replace letters with digits
@@ -271,66 +541,80 @@ public class TransactionProcessorSample {
             BigInteger remainder = ibanValue.remainder(BigInteger.valueOf(97));
             // If remainder does not equal 1, then the iban is invalid
             if (!remainder.equals(BigInteger.ONE)) {
-                events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, "Invalid IBAN number"));
+                events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, "Invalid IBAN number", EventLog.REASON_INVALID_IBAN));
                 declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
                 return true;
             }
         // Case where the payment method is a card
         } else if (Objects.equals(transaction.getMethod(), "CARD")) {
             // Get the first 10 digits of account number for BIN matching
-            String accountNumberPrefix = transaction.getAccount_Number().substring(0, 10);
+            long accountNumberPrefix = parseCardPrefix(transaction.getAccount_Number());
+            if (accountNumberPrefix < 0) {
+                return declineMalformedAccount(transaction, events, declinedTransactionTracker, quarantine, EventLog.REASON_MALFORMED_CARD);
+            }
             boolean binMatch = false;
             String cardType = null;
             boolean countryMatch = false;
 
-            // Iterate through BIN mappings to find a match
-            for (BinMapping binMapping : binMappings) {
-                long rangeFrom = binMapping.getRangeFrom();
-                long rangeTo = binMapping.getRangeTo();
-                if (Long.parseLong(accountNumberPrefix) >= rangeFrom && Long.parseLong(accountNumberPrefix) <= rangeTo) {
-                    binMatch = true;
-                    cardType = binMapping.getType();
-                    // Check if the country code matches for this BIN mapping
-                    for (User user : users) {
-                        if (Objects.equals(binMapping.getCountry().substring(0, 2), user.getCountry())) {
-                            countryMatch = true;
-                            break; // Exit the loop once a matching user country is found
-                        }
+            // Look up the BIN mapping matching the card
+            BinMapping binMapping = binTable.find(accountNumberPrefix);
+            if (binMapping != null) {
+                binMatch = true;
+                cardType = binMapping.getType();
+                // Check if the country code matches for this BIN mapping
+                for (User user : users) {
+                    if (Objects.equals(binMapping.getCountry().substring(0, 2), user.getCountry())) {
+                        countryMatch = true;
+                        break; // Exit the loop once a matching user country is found
                     }
-
-                    // Exit the loop once a BIN match is found
-                    break;
                 }
             }
 
             // Check if a matching BIN was found
             if (!binMatch) {
-                events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, "BIN number not in range"));
+                events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, "BIN number not in range", EventLog.REASON_BIN_NOT_IN_RANGE, binTable.getVersion()));
                 declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
                 return true;
             } else {
                 // Check if the country code matches
                 if (!countryMatch) {
-                    events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, "Country code does not exist or is wrong"));
+                    events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, "Country code does not exist or is wrong", EventLog.REASON_WRONG_COUNTRY, binTable.getVersion()));
                     declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
                     return true;
                 } else {
                     // Check if the card type is valid
                     if (!Objects.equals(cardType, "DC")) {
-                        events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, "Not a debit card transaction"));
+                        events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, "Not a debit card transaction", EventLog.REASON_NOT_DEBIT_CARD, binTable.getVersion()));
                         declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
                         return true;
                     }
                 }
             }
         } else { // Other payment types must be declined
-            events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, "Invalid payment method"));
+            events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, "Invalid payment method", EventLog.REASON_INVALID_METHOD));
             declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
             return true;
         }
         return false;
     }
 
+    /**
+     * Declines a transaction whose account number cannot be validated and adds it to the quarantine.
+     *
+     * @param transaction              The transaction to decline.
+     * @param events                   The list of events to add the decline to.
+     * @param declinedTransactionTracker The map tracking declined transactions and their associated accounts.
+     * @param quarantine               The quarantine receiving the transaction.
+     * @param reason                   The reason code of the decline, see EventLog.REASONS.
+     * @return                         Always true, the transaction is invalid.
+     */
+    private static boolean declineMalformedAccount(Transaction transaction, List<Event> events, TreeMap<String, String> declinedTransactionTracker, Quarantine quarantine, int reason) {
+        events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, EventLog.REASONS[reason], reason));
+        declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
+        quarantine.add(transaction, EventLog.REASONS[reason]);
+        return true;
+    }
+
     /**
      * Method to verify if the deposit or withdrawal transaction is valid for the given user.
      * Adds corresponding events to the list and updates declinedTransactionTracker and successfulDeposits maps accordingly.
@@ -352,12 +636,12 @@ public class TransactionProcessorSample {
                     // Check if the deposit amount is valid
                     if (amount <= 0 ){
                         declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
-                        events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, amount + "is invalid amount"));
+                        events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, amount + "is invalid amount", EventLog.REASON_INVALID_AMOUNT));
                         return true;
                     // Check if the amount is within the bounds of deposit
                     } else if ((amount < user.getDeposit_min() || amount > user.getDeposit_max())) {
                         declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
-                        events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, amount + " amount not within the bounds of deposit"));
+                        events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, amount + " amount not within the bounds of deposit", EventLog.REASON_DEPOSIT_BOUNDS));
                         return true;
                     }else {
                         successfulDeposits.computeIfAbsent(transaction.getUser_id(), k -> new HashSet<>()).add(transaction.getAccount_Number());
@@ -367,24 +651,24 @@ public class TransactionProcessorSample {
                     // Check if the deposit amount is valid
                     if (amount <= 0 ) {
                         declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
-                        events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, amount + "is invalid amount"));
+                        events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, amount + "is invalid amount", EventLog.REASON_INVALID_AMOUNT));
                         return true;
                     // Check if the amount is within the bounds of withdrawal
                     } else if (amount > user.getBalance() || (amount < user.getWithdraw_min() || amount > user.getWithdraw_max())) {
-                        events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, amount + " amount not within the bounds of withdrawal"));
+                        events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, amount + " amount not within the bounds of withdrawal", EventLog.REASON_WITHDRAWAL_BOUNDS));
                         declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
                         return true;
                     }
 
                     // Check if the account has been used for a successful deposit before allowing withdrawal
                     if (!successfulDeposits.containsKey(transaction.getUser_id()) || !successfulDeposits.get(transaction.getUser_id()).contains(transaction.getAccount_Number())) {
-                        events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, "Withdrawal not allowed with this account - no previous successful deposits made"));
+                        events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, "Withdrawal not allowed with this account - no previous successful deposits made", EventLog.REASON_NO_DEPOSIT));
                         declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
                         return true;
                     }
                 } else {
                     // Decline a transaction if it is neither deposit or withdrawal
-                    events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, "Transaction is neither deposit nor withdrawal"));
+                    events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, "Transaction is neither deposit nor withdrawal", EventLog.REASON_INVALID_TYPE));
                     declinedTransactionTracker.put(transaction.getTransaction_id(), transaction.getAccount_Number());
                     return true;
                 }
@@ -400,10 +684,11 @@ public class TransactionProcessorSample {
      * @param transactions             The list of transactions to verify.
      * @param events                   The list of events to update if a condition is violated.
      * @param declinedTransactionTracker The map tracking declined transactions and their associated accounts.
+     * @param state                    The state holding the CARD accounts of the previously processed transactions.
      */
-    private static void verifyUniqueAccount(List<Transaction> transactions, List<Event> events, TreeMap<String, String> declinedTransactionTracker) {
+    private static void verifyUniqueAccount(List<Transaction> transactions, List<Event> events, TreeMap<String, String> declinedTransactionTracker, ProcessingState state) {
         // Map to store user_ids along with the set of account numbers associated with each user_id
-        Map<String, Set<String>> userAccounts = new HashMap<>();
+        Map<String, Set<String>> userAccounts = state.getCardAccounts();
 
         for (Transaction transaction : transactions) {
             String user = transaction.getUser_id(); // Get user from each transaction
@@ -419,6 +704,35 @@ public class TransactionProcessorSample {
             }
 
         }
+        String foundAcc = findReusedCardAccount(userAccounts, declinedTransactionTracker.values());
+
+        // The first occurrence of foundAcc may already have been in a previous run
+        int count = state.getKnownCardAccounts().contains(foundAcc) ? 1 : 0;
+        for (Transaction transaction : transactions) {
+            // Check if the current transaction's account number matches the foundAcc account
+            if (Objects.equals(transaction.getAccount_Number(), foundAcc) && count <= 0) {
+                // If it is the first occurrence, increment c
+                count += 1;
+            } else if (Objects.equals(transaction.getAccount_Number(), foundAcc)) {
+                events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, "Cannot withdraw with new account", EventLog.REASON_NEW_ACCOUNT));
+            }
+        }
+        for (Transaction transaction : transactions) {
+            if ("CARD".equals(transaction.getMethod())) {
+                state.getKnownCardAccounts().add(transaction.getAccount_Number());
+            }
+        }
+    }
+
+    /**
+     * Method to find the CARD account whose later transactions are declined by the unique account check:
+     * a previously declined account of a user_id that has used several CARD accounts.
+     *
+     * @param userAccounts     The map of user_ids to the CARD accounts they have used.
+     * @param declinedAccounts The accounts of declined transactions.
+     * @return                 The account found, or null if there is none.
+     */
+    static String findReusedCardAccount(Map<String, Set<String>> userAccounts, Collection<String> declinedAccounts) {
         // Variable to store the account number to be kept if multiple accounts are found for a user_id
         String foundAcc = null;
         for (Map.Entry<String, Set<String>> entry : userAccounts.entrySet()) {
@@ -433,7 +747,7 @@ public class TransactionProcessorSample {
             if (accountNumbers.size() > 1) {
                 for (String accountNumber : accountNumbers) {
                     // Check if the account number has been previously declined
-                    if (declinedTransactionTracker.containsValue(accountNumber)) {
+                    if (declinedAccounts.contains(accountNumber)) {
                         count += 1;
                         account = accountNumber;
                         // Mark the previous account as invalid and break the loop
@@ -450,17 +764,7 @@ public class TransactionProcessorSample {
                 }
             }
         }
-
-        int count = 0;
-        for (Transaction transaction : transactions) {
-            // Check if the current transaction's account number matches the foundAcc account
-            if (Objects.equals(transaction.getAccount_Number(), foundAcc) && count <= 0) {
-                // If it is the first occurrence, increment c
-                count += 1;
-            } else if (Objects.equals(transaction.getAccount_Number(), foundAcc)) {
-                events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, "Cannot withdraw with new account"));
-            }
-        }
+        return foundAcc;
     }
 
     /**
@@ -479,7 +783,7 @@ public class TransactionProcessorSample {
             // Check that the current transaction is not the same as the one in the tracker and that the account number matches.
             if(!Objects.equals(trans, transaction.getUser_id()) && Objects.equals(transaction.getAccount_Number(), account)){
                 // If conditions are met, decline transaction
-                events.add(new Event(transaction.getTransaction_id(), Event.STATUS_DECLINED, transaction.getUser_id() + " used by another account"));
+                events.add(new Event(transaction.getTransaction_id(), transaction.getUser_id(), Event.STATUS_DECLINED, transaction.getUser_id() + " used by another account", EventLog.REASON_ACCOUNT_IN_USE));
                 return true; // indicates that the account has been used by another account.
             }
         }
@@ -491,14 +795,16 @@ public class TransactionProcessorSample {
      * @param users        The list of users whose balances need to be updated.
      * @param transactions The list of transactions to consider for updating balances.
      * @param events       The list of events containing transaction status information.
+     * @param state        The state holding the transaction ids that must never update a balance.
      */
-    private static void updateBalances(List<User> users, List<Transaction> transactions, List<Event> events) {
+    private static void updateBalances(List<User> users, List<Transaction> transactions, List<Event> events, ProcessingState state) {
         // Initialize a TreeMap to track processed transactions
         TreeMap<String, Boolean> processedTransactions = new TreeMap<>();
 
         for (Transaction transaction : transactions) {
             // Check if the transaction ID has already been processed
-            if (processedTransactions.containsKey(transaction.getTransaction_id())) {
+            if (processedTransactions.containsKey(transaction.getTransaction_id())
+                    || state.getSkippedTransactionIds().contains(transaction.getTransaction_id())) {
                 continue; // Skip processing if already processed
             }
 
@@ -546,271 +852,3 @@ public class TransactionProcessorSample {
     }
 
 }
-
-
-/**
- * A class named User representing a user account.
- */
-class User {
-    /**
-     * ID of the user.
-     */
-    private final String user_id;
-    /**
-     * Username associated with the user.
-     */
-    private String username;
-    /**
-     * Current balance in the user's account.
-     */
-    private double balance;
-    /**
-     * two-letter country code, ISO 3166-1 alpha-2 associated with the user.
-     */
-    private final String country;
-    /**
-     * Flag where 0 represents an active user, 1 represents frozen.
-     */
-    private final int frozen;
-    /**
-     * Minimum deposit amount allowed for the user.
-     */
-    private final double deposit_min;
-    /**
-     * Maximum deposit amount allowed for the user.
-     */
-    private final double deposit_max;
-    /**
-     * Minimum withdrawal amount allowed for the user.
-     */
-    private final double withdraw_min;
-    /**
-     * Maximum withdrawal amount allowed for the user.
-     */
-    private final double withdraw_max;
-
-    /**
-     * Constructor to initialize User objects.
-     */
-    public User(String user_id, String username, double balance, String country,
-                int frozen, double deposit_min, double deposit_max,double withdraw_min, double withdraw_max){
-        this.user_id = user_id;
-        this.balance = balance;
-        this.country = country;
-        this.frozen = frozen;
-        this.deposit_min = deposit_min;
-        this.deposit_max = deposit_max;
-        this.withdraw_min = withdraw_min;
-        this.withdraw_max = withdraw_max;
-    }
-
-    /**
-     * Getter methods for retrieving objects of the User class.
-     */
-    public String getUser_id() {
-        return this.user_id;
-    }
-
-    public int getFrozen(){
-        return this.frozen;
-    }
-
-    public double getBalance() {
-        return this.balance;
-    }
-    /**
-     * Method to update every account's balance.
-     */
-    public void updateBalance(double amount) {
-        this.balance += amount;
-    }
-
-    public String getCountry(){
-        return this.country;
-    }
-
-    public double getDeposit_max() {
-        return this.deposit_max;
-    }
-
-    public double getDeposit_min() {
-        return this.deposit_min;
-    }
-
-    public double getWithdraw_max() {
-        return this.withdraw_max;
-    }
-
-    public double getWithdraw_min() {
-        return withdraw_min;
-    }
-}
-
-/**
- * A class named Transaction representing a financial transaction.
- */
-class Transaction {
-    /**
-     * ID of the transaction.
-     */
-    private final String transaction_id;
-    /**
-     * ID of the user.
-     */
-    private final String user_id;
-    /**
-     * Transaction type (allowed values are DEPOSIT or WITHDRAW).
-     */
-    private final String type;
-    /**
-     * Amount of the transaction.
-     */
-    private final double amount;
-    /**
-     * Payment method used for the transaction.
-     */
-    private final String method;
-    /**
-     * Account number associated with the transaction.
-     */
-    private final String account_number;
-
-    /**
-     * Constructor to initialize Transaction objects.
-     */
-    public Transaction(String transaction_id, String user_id, String type, double amount,
-                       String method, String account_number){
-        this.transaction_id = transaction_id;
-        this.user_id = user_id;
-        this.amount = amount;
-        this.type = type;
-        this.method = method;
-        this.account_number = account_number;
-    }
-
-    /**
-     * Getter methods for retrieving objects of the Transaction class.
-     */
-    public String getTransaction_id() {
-        return this.transaction_id;
-    }
-
-    public String getUser_id() {
-        return this.user_id;
-    }
-
-    public String getType() {
-        return this.type;
-    }
-
-    public String getMethod(){
-        return this.method;
-    }
-
-    public String getAccount_Number(){
-        return this.account_number;
-    }
-
-    public double getAmount() {
-        return this.amount;
-    }
-}
-
-/**
- * A class named BinMapping representing a mapping between BIN ranges and card types.
- */
-class BinMapping {
-    /**
-     * Issuing bank name.
-     */
-    private String name;
-    /**
-     * The lowest possible card number (first 10 digits of card number) that would be identified within this card range, inclusive.
-     */
-    private final long rangeFrom;
-    /**
-     * The highest possible card number (first 10 digits of card number) that would be identified within this card range, inclusive.
-     */
-    private final long rangeTo;
-    /**
-     * Type of card associated with the BIN range (either debit or credit).
-     */
-    private final String type;
-    /**
-     * Three-letter country code, ISO 3166-1 alpha-3 that is associated with the BIN range.
-     */
-    private final String country;
-
-    /**
-     * Constructor to initialize BinMapping objects.
-     */
-    public BinMapping(String name, long rangeFrom, long rangeTo, String type, String country){
-        this.name = name;
-        this.rangeFrom = rangeFrom;
-        this.rangeTo = rangeTo;
-        this.type = type;
-        this.country = country;
-    }
-
-    /**
-     * Getter methods for retrieving objects of the BinMapping class.
-     */
-    public long getRangeFrom() {
-        return this.rangeFrom;
-    }
-
-    public long getRangeTo() {
-        return this.rangeTo;
-    }
-
-    public String getType() {
-        return this.type;
-    }
-    public String getCountry(){
-        return this.country;
-    }
-}
-
-/**
- * A class named Event representing an event related to a transaction.
- */
-class Event {
-
-    /**
-     * Define constants for the status of the event.
-     */
-    public static final String STATUS_DECLINED = "DECLINED";
-    public static final String STATUS_APPROVED = "APPROVED";
-
-    /**
-     * ID of the transaction associated with the event.
-     */
-    public String transactionId;
-    /**
-     *  Status of the event (either DECLINED or APPROVED).
-     */
-    public String status;
-    /**
-     * Additional message describing the event.
-     */
-    public String message;
-
-    /**
-     * Constructor to initialize Event objects.
-     */
-    public Event(String transactionId, String status, String message) {
-        this.transactionId = transactionId;
-        this.status = status;
-        this.message = message;
-    }
-
-    /**
-     * Getter methods for retrieving the status and transaction id of the event.
-     */
-    public String getStatus(){
-        return this.status;
-    }
-    public String getTransaction_id() {
-        return this.transactionId;
-    }
-}
@@ -0,0 +1,105 @@
+package com.playtech.assignment;
+
+/**
+ * A class named User representing a user account.
+ */
+class User {
+    /**
+     * ID of the user.
+     */
+    private final String user_id;
+    /**
+     * Username associated with the user.
+     */
+    private String username;
+    /**
+     * Current balance in the user's account.
+     */
+    private double balance;
+    /**
+     * two-letter country code, ISO 3166-1 alpha-2 associated with the user.
+     */
+    private final String country;
+    /**
+     * Flag where 0 represents an active user, 1 represents frozen.
+     */
+    private final int frozen;
+    /**
+     * Minimum deposit amount allowed for the user.
+     */
+    private final double deposit_min;
+    /**
+     * Maximum deposit amount allowed for the user.
+     */
+    private final double deposit_max;
+    /**
+     * Minimum withdrawal amount allowed for the user.
+     */
+    private final double withdraw_min;
+    /**
+     * Maximum withdrawal amount allowed for the user.
+     */
+    private final double withdraw_max;
+
+    /**
+     * Constructor to initialize User objects.
+     */
+    public User(String user_id, String username, double balance, String country,
+                int frozen, double deposit_min, double deposit_max,double withdraw_min, double withdraw_max){
+        this.user_id = user_id;
+        this.balance = balance;
+        this.country = country;
+        this.frozen = frozen;
+        this.deposit_min = deposit_min;
+        this.deposit_max = deposit_max;
+        this.withdraw_min = withdraw_min;
+        this.withdraw_max = withdraw_max;
+    }
+
+    /**
+     * Getter methods for retrieving objects of the User class.
+     */
+    public String getUser_id() {
+        return this.user_id;
+    }
+
+    public int getFrozen(){
+        return this.frozen;
+    }
+
+    public double getBalance() {
+        return this.balance;
+    }
+    /**
+     * Method to restore the balance saved by a previous run.
+     */
+    public void setBalance(double balance) {
+        this.balance = balance;
+    }
+    /**
+     * Method to update every account's balance.
+     */
+    public void updateBalance(double amount) {
+        this.balance += amount;
+    }
+
+    public String getCountry(){
+        return this.country;
+    }
+
+    public double getDeposit_max() {
+        return this.deposit_max;
+    }
+
+    public double getDeposit_min() {
+        return this.deposit_min;
+    }
+
+    public double getWithdraw_max() {
+        return this.withdraw_max;
+    }
+
+    public double getWithdraw_min() {
+        return withdraw_min;
+    }
+}
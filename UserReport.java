@@ -0,0 +1,122 @@
+package com.playtech.assignment;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A class named UserReport which aggregates the outcome of the transactions per user while they are
+ * processed: approved deposit and withdrawal totals, approved and declined counts, decline reasons and
+ * the accounts used. Counters are kept in primitive arrays indexed by user, so recording an event costs
+ * one map lookup and a few array updates.
+ */
+class UserReport {
+
+    /**
+     * Number of counters per user for decline reasons: one per known reason and one for other messages.
+     */
+    private static final int REASON_SLOTS = EventLog.REASONS.length + 1;
+
+    private final Map<String, Integer> userIndexes = new HashMap<>();
+    private final List<String> userIds = new ArrayList<>();
+    private final List<Set<String>> accounts = new ArrayList<>();
+    private double[] deposits = new double[64];
+    private double[] withdrawals = new double[64];
+    private int[] approved = new int[64];
+    private int[] declined = new int[64];
+    private int[] reasons = new int[64 * REASON_SLOTS];
+
+    /**
+     * Constructor to initialize a report listing the users in the order of the users file.
+     * Users that only appear in transactions are listed after them.
+     */
+    public UserReport(List<User> users) {
+        for (User user : users) {
+            indexOf(user.getUser_id());
+        }
+    }
+
+    /**
+     * Records the event of a transaction.
+     *
+     * @param transaction The processed transaction.
+     * @param event       The event of the transaction.
+     */
+    void record(Transaction transaction, Event event) {
+        int user = indexOf(transaction.getUser_id());
+        accounts.get(user).add(transaction.getAccount_Number());
+        if (Event.STATUS_APPROVED.equals(event.status)) {
+            approved[user]++;
+            if ("DEPOSIT".equals(transaction.getType())) {
+                deposits[user] += transaction.getAmount();
+            } else if ("WITHDRAW".equals(transaction.getType())) {
+                withdrawals[user] += transaction.getAmount();
+            }
+        } else {
+            recordDecline(event);
+        }
+    }
+
+    /**
+     * Records a decline that was added after the transaction had its first event.
+     *
+     * @param event The declined event.
+     */
+    void recordDecline(Event event) {
+        int user = indexOf(event.userId);
+        declined[user]++;
+        int code = event.reason < EventLog.REASONS.length ? event.reason : EventLog.REASONS.length;
+        reasons[user * REASON_SLOTS + code]++;
+    }
+
+    private int indexOf(String userId) {
+        Integer index = userIndexes.get(userId);
+        if (index == null) {
+            index = userIds.size();
+            userIndexes.put(userId, index);
+            userIds.add(userId);
+            accounts.add(new LinkedHashSet<>());
+            if (index == approved.length) {
+                int capacity = approved.length * 2;
+                deposits = Arrays.copyOf(deposits, capacity);
+                withdrawals = Arrays.copyOf(withdrawals, capacity);
+                approved = Arrays.copyOf(approved, capacity);
+                declined = Arrays.copyOf(declined, capacity);
+                reasons = Arrays.copyOf(reasons, capacity * REASON_SLOTS);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Writes the report to a CSV file, gzip compressed if its name ends with ".gz".
+     * Decline reasons are written as reason=count and, like the accounts, separated by semicolons.
+     *
+     * @param filePath The path to the CSV file.
+     */
+    void write(final Path filePath) {
+        try (final Writer writer = CompressedFiles.openWriter(filePath)) {
+            writer.append("USER_ID,DEPOSITS,WITHDRAWALS,APPROVED,DECLINED,DECLINE_REASONS,ACCOUNTS\n");
+            for (int user = 0; user < userIds.size(); user++) {
+                writer.append(userIds.get(user)).append(",")
+                        .append(String.format("%.2f", deposits[user])).append(",")
+                        .append(String.format("%.2f", withdrawals[user])).append(",")
+                        .append(String.valueOf(approved[user])).append(",")
+                        .append(String.valueOf(declined[user])).append(",");
+                String separator = "";
+                for (int code = 0; code < REASON_SLOTS; code++) {
+                    int count = reasons[user * REASON_SLOTS + code];
+                    if (count > 0) {
+                        String reason = code < EventLog.REASONS.length ? EventLog.REASONS[code].trim() : "Other";
+                        writer.append(separator).append(reason).append("=").append(String.valueOf(count));
+                        separator = ";";
+                    }
+                }
+                writer.append(",").append(String.join(";", accounts.get(user))).append("\n");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}